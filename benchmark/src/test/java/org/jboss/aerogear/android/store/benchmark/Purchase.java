@@ -0,0 +1,120 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.benchmark;
+
+import org.jboss.aerogear.android.core.RecordId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The item of the benchmarks, with a nested object and an array of nested
+ * objects, as typical application data has.
+ */
+public class Purchase {
+
+    /**
+     * The number of distinct customers, each having one purchase out of this
+     * many.
+     */
+    static final int CUSTOMERS = 100;
+
+    @RecordId
+    private Long id;
+    private String customer;
+    private int revision;
+    private Address address;
+    private List<Line> lines;
+
+    public Purchase(long id, int revision) {
+        this.id = id;
+        this.customer = "customer " + (id % CUSTOMERS);
+        this.revision = revision;
+        this.address = new Address("street " + id, "city " + (id % 50));
+        this.lines = new ArrayList<Line>();
+        for (int line = 0; line < 3; line++) {
+            lines.add(new Line("product " + ((id + line) % 500), line + 1, 9.99 * (line + 1)));
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(String customer) {
+        this.customer = customer;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public void setRevision(int revision) {
+        this.revision = revision;
+    }
+
+    public Address getAddress() {
+        return address;
+    }
+
+    public void setAddress(Address address) {
+        this.address = address;
+    }
+
+    public List<Line> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<Line> lines) {
+        this.lines = lines;
+    }
+
+    public static class Address {
+
+        private String street;
+        private String city;
+
+        public Address(String street, String city) {
+            this.street = street;
+            this.city = city;
+        }
+
+    }
+
+    public static class Line {
+
+        private String product;
+        private int quantity;
+        private double price;
+
+        public Line(String product, int quantity, double price) {
+            this.product = product;
+            this.quantity = quantity;
+            this.price = price;
+        }
+
+    }
+
+}
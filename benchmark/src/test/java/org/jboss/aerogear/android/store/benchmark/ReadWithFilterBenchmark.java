@@ -0,0 +1,77 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.benchmark;
+
+import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.store.Store;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtered reads of the stores supporting them, the encrypted stores do not.
+ * The filter matches the purchases of one customer, one out of
+ * {@link Purchase#CUSTOMERS}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ReadWithFilterBenchmark {
+
+    @Param({"MEMORY", "SQL"})
+    public StoreType store;
+
+    @Param({"1000", "10000", "100000"})
+    public int entities;
+
+    private Store<Purchase> purchases;
+    private ReadFilter filter;
+
+    @Setup
+    public void setUp() throws JSONException {
+        purchases = store.createSeeded(RuntimeEnvironment.application, entities);
+        filter = new ReadFilter();
+        filter.setWhere(new JSONObject().put("customer", "customer 7"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        StoreType.close(purchases);
+    }
+
+    @Benchmark
+    public List<Purchase> readWithFilter() {
+        return purchases.readWithFilter(filter);
+    }
+
+}
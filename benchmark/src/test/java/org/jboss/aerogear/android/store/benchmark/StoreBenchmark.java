@@ -0,0 +1,105 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.benchmark;
+
+import org.jboss.aerogear.android.store.Store;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves and reads of every store implementation. The saves update stored
+ * purchases, so the size of the store does not change while it is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StoreBenchmark {
+
+    static final int BULK_SIZE = 100;
+
+    @Param({"MEMORY", "SQL", "ENCRYPTED_MEMORY", "ENCRYPTED_SQL"})
+    public StoreType store;
+
+    @Param({"1000", "10000", "100000"})
+    public int entities;
+
+    private Store<Purchase> purchases;
+    private final Random random = new Random(42);
+    private int revision;
+
+    @Setup
+    public void setUp() {
+        purchases = store.createSeeded(RuntimeEnvironment.application, entities);
+    }
+
+    @TearDown
+    public void tearDown() {
+        StoreType.close(purchases);
+    }
+
+    private long randomId() {
+        return 1 + random.nextInt(entities);
+    }
+
+    @Benchmark
+    public Purchase saveSingle() {
+        Purchase purchase = new Purchase(randomId(), ++revision);
+        purchases.save(purchase);
+        return purchase;
+    }
+
+    @Benchmark
+    public List<Purchase> saveBulk() {
+        long first = 1 + random.nextInt(Math.max(1, entities - BULK_SIZE + 1));
+        revision++;
+        List<Purchase> bulk = new ArrayList<Purchase>(BULK_SIZE);
+        for (long id = first; id < first + BULK_SIZE; id++) {
+            bulk.add(new Purchase(id, revision));
+        }
+        purchases.save(bulk);
+        return bulk;
+    }
+
+    @Benchmark
+    public Purchase readById() {
+        return purchases.read(randomId());
+    }
+
+    @Benchmark
+    public Collection<Purchase> readAll() {
+        return purchases.readAll();
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.benchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+/**
+ * Runs the JMH benchmarks of this package and writes their results as JSON,
+ * see build.gradle for the options.
+ *
+ * The stores need the Android framework, which Robolectric only provides to
+ * the classes it loads, so the benchmarks run in this test's JVM instead of
+ * forked ones. Comparing results is only meaningful between runs on the same
+ * machine and JVM.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class StoreBenchmarks {
+
+    @Test
+    public void run() throws RunnerException {
+        String include = System.getProperty("benchmark.include", "");
+        String entities = System.getProperty("benchmark.entities", "");
+        String results = System.getProperty("benchmark.results", "build/reports/benchmark/results.json");
+        new File(results).getAbsoluteFile().getParentFile().mkdirs();
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(getClass().getPackage().getName() + "\\..*" + include)
+                .forks(0)
+                .resultFormat(ResultFormatType.JSON)
+                .result(results);
+        if (!entities.isEmpty()) {
+            options.param("entities", entities.split(","));
+        }
+        new Runner(options.build()).run();
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.benchmark;
+
+import android.content.Context;
+
+import org.jboss.aerogear.android.store.DataManager;
+import org.jboss.aerogear.android.store.Store;
+import org.jboss.aerogear.android.store.memory.EncryptedMemoryStoreConfiguration;
+import org.jboss.aerogear.android.store.memory.MemoryStoreConfiguration;
+import org.jboss.aerogear.android.store.sql.EncryptedSQLStore;
+import org.jboss.aerogear.android.store.sql.EncryptedSQLStoreConfiguration;
+import org.jboss.aerogear.android.store.sql.SQLStore;
+import org.jboss.aerogear.android.store.sql.SQLStoreConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The benchmarked store implementations, configured as applications do.
+ */
+public enum StoreType {
+
+    MEMORY {
+        @Override
+        Store<Purchase> create(Context context) {
+            return DataManager.config("memoryBenchmark", MemoryStoreConfiguration.class)
+                    .store(Purchase.class);
+        }
+    },
+    SQL {
+        @Override
+        Store<Purchase> create(Context context) {
+            SQLStore<Purchase> store = (SQLStore<Purchase>) DataManager
+                    .config("sqlBenchmark", SQLStoreConfiguration.class)
+                    .withContext(context)
+                    .store(Purchase.class);
+            store.openSync();
+            return store;
+        }
+    },
+    ENCRYPTED_MEMORY {
+        @Override
+        Store<Purchase> create(Context context) {
+            return DataManager.config("encryptedMemoryBenchmark", EncryptedMemoryStoreConfiguration.class)
+                    .withContext(context)
+                    .usingPassword(PASSPHRASE)
+                    .store(Purchase.class);
+        }
+    },
+    ENCRYPTED_SQL {
+        @Override
+        Store<Purchase> create(Context context) {
+            EncryptedSQLStore<Purchase> store = (EncryptedSQLStore<Purchase>) DataManager
+                    .config("encryptedSqlBenchmark", EncryptedSQLStoreConfiguration.class)
+                    .withContext(context)
+                    .usingPassphrase(PASSPHRASE)
+                    .store(Purchase.class);
+            store.openSync();
+            return store;
+        }
+    };
+
+    private static final String PASSPHRASE = "AeroGear";
+    private static final int SEED_BATCH = 1000;
+
+    abstract Store<Purchase> create(Context context);
+
+    /**
+     * Creates a store holding the purchases with ids 1 to the given number, at
+     * revision 0. The SQL stores share the database named after the item
+     * class, which is deleted first.
+     *
+     * @param context the context of the stores
+     * @param entities the number of purchases
+     * @return the store
+     */
+    Store<Purchase> createSeeded(Context context, int entities) {
+        context.deleteDatabase(Purchase.class.getSimpleName());
+        Store<Purchase> store = create(context);
+        store.reset();
+
+        List<Purchase> batch = new ArrayList<Purchase>(SEED_BATCH);
+        for (long id = 1; id <= entities; id++) {
+            batch.add(new Purchase(id, 0));
+            if (batch.size() == SEED_BATCH) {
+                store.save(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            store.save(batch);
+        }
+        return store;
+    }
+
+    /**
+     * Closes a store created by {@link #create(Context)}.
+     *
+     * @param store the store
+     */
+    static void close(Store<Purchase> store) {
+        if (store instanceof SQLStore) {
+            ((SQLStore<Purchase>) store).close();
+        } else if (store instanceof EncryptedSQLStore) {
+            ((EncryptedSQLStore<Purchase>) store).close();
+        }
+    }
+
+}
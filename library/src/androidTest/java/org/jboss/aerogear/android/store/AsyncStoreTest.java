@@ -0,0 +1,133 @@
+/**
+ * JBoss, Home of Professional Open Source Copyright Red Hat, Inc., and
+ * individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jboss.aerogear.android.store;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.store.generator.StubIdGenerator;
+import org.jboss.aerogear.android.store.helper.Data;
+import org.jboss.aerogear.android.store.memory.MemoryStore;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+public class AsyncStoreTest {
+
+    private AsyncStore<Data> asyncStore;
+
+    @Before
+    public void setUp() {
+        asyncStore = new AsyncStore<Data>(new MemoryStore<Data>(new StubIdGenerator()));
+    }
+
+    @Test
+    public void testReadsSeePreviousWrites() throws Exception {
+        List<Data> items = new ArrayList<Data>();
+        for (int i = 1; i <= 100; i++) {
+            items.add(new Data(i, "name " + i, "description"));
+        }
+        asyncStore.saveAsync(items, null);
+        asyncStore.removeAsync(1, null);
+        Future<Data> saved = asyncStore.saveAsync(new Data(101, "name", "description"), null);
+
+        Assert.assertEquals(100, asyncStore.readAllAsync(null).get(5, TimeUnit.SECONDS).size());
+        Assert.assertNull(asyncStore.readAsync(1, null).get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("name", saved.get(5, TimeUnit.SECONDS).getName());
+
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject().put("name", "name 2"));
+        Assert.assertEquals(1, asyncStore.readWithFilterAsync(filter, null).get(5, TimeUnit.SECONDS).size());
+
+        asyncStore.resetAsync(null);
+        Assert.assertTrue(asyncStore.isEmptyAsync(null).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailureIsReported() throws Exception {
+        Future<Data> saved = asyncStore.saveAsync((Data) null, null);
+        try {
+            saved.get(5, TimeUnit.SECONDS);
+            Assert.fail("Saving null should fail");
+        } catch (ExecutionException e) {
+            Assert.assertNotNull(e.getCause());
+        }
+
+        Assert.assertTrue(asyncStore.isEmptyAsync(null).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReadsAfterCancelledWrite() throws Exception {
+        List<Data> items = new ArrayList<Data>();
+        for (int i = 1; i <= 1000; i++) {
+            items.add(new Data(i, "name " + i, "description"));
+        }
+        asyncStore.saveAsync(items, null);
+        Future<Data> cancelled = asyncStore.saveAsync(new Data(1001, "name", "description"), null);
+        cancelled.cancel(true);
+
+        int expected = cancelled.isCancelled() ? 1000 : 1001;
+        Assert.assertEquals(expected, asyncStore.readAllAsync(null).get(5, TimeUnit.SECONDS).size());
+        Assert.assertEquals(expected, (long) asyncStore.countAsync(null, null).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReadsWaitingForWriteDoNotBlockOtherStores() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        AsyncStore<Data> slowStore = new AsyncStore<Data>(new MemoryStore<Data>(new StubIdGenerator()) {
+            @Override
+            public void save(Collection<Data> items) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.save(items);
+            }
+        });
+
+        List<Data> items = new ArrayList<Data>();
+        for (int i = 1; i <= 10; i++) {
+            items.add(new Data(i, "name " + i, "description"));
+        }
+        slowStore.saveAsync(items, null);
+        List<Future<Long>> waitingReads = new ArrayList<Future<Long>>();
+        for (int i = 0; i < 16; i++) {
+            waitingReads.add(slowStore.countAsync(null, null));
+        }
+
+        asyncStore.saveAsync(new Data(1, "name", "description"), null);
+        Assert.assertEquals("name", asyncStore.readAsync(1, null).get(5, TimeUnit.SECONDS).getName());
+
+        release.countDown();
+        for (Future<Long> read : waitingReads) {
+            Assert.assertEquals(10L, (long) read.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+}
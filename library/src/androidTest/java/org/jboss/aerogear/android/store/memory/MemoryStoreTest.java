@@ -21,7 +21,10 @@ import android.support.test.runner.AndroidJUnit4;
 import org.jboss.aerogear.android.core.ReadFilter;
 import org.jboss.aerogear.android.core.reflection.PropertyNotFoundException;
 import org.jboss.aerogear.android.core.reflection.RecordIdNotFoundException;
+import org.jboss.aerogear.android.store.OnStoreChangedListener;
 import org.jboss.aerogear.android.store.Store;
+import org.jboss.aerogear.android.store.StoreChange;
+import org.jboss.aerogear.android.store.StoreMetrics;
 import org.jboss.aerogear.android.store.generator.StubIdGenerator;
 import org.jboss.aerogear.android.store.helper.Data;
 import org.jboss.aerogear.android.store.helper.DataWithNoIdConfigured;
@@ -33,8 +36,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 @RunWith(AndroidJUnit4.class)
@@ -118,6 +124,15 @@ public class MemoryStoreTest {
         Assert.assertNotNull("data could not be null", data);
     }
 
+    @Test
+    public void testNullId() {
+        store.save(new Data("foo", "desc of foo"));
+        Assert.assertNull(store.read(null));
+        Assert.assertFalse(store.exists(null));
+        store.remove((Serializable) null);
+        Assert.assertEquals(1, store.count());
+    }
+
     @Test
     public void testSaveNoExistRecord() {
         Data data = new Data("foo", "desc of foo");
@@ -196,6 +211,24 @@ public class MemoryStoreTest {
         Assert.assertNull("bar should be null", bar);
     }
 
+    @Test
+    public void testRemoveCollectionAndFilter() throws JSONException {
+        store.save(new Data(1, "foo", "desc of foo"));
+        store.save(new Data(2, "bar", "desc of bar"));
+        store.save(new Data(3, "bar", "desc of bar"));
+        store.save(new Data(4, "baz", "desc of baz"));
+
+        store.remove(Arrays.asList(1, 5));
+        Assert.assertNull(store.read(1));
+        Assert.assertEquals(3, store.readAll().size());
+
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"name\":\"bar\"}"));
+        store.removeWithFilter(filter);
+        Assert.assertEquals(1, store.readAll().size());
+        Assert.assertNotNull(store.read(4));
+    }
+
     @Test
     public void testIsEmpty() {
         Assert.assertTrue("should be empty", store.isEmpty());
@@ -207,6 +240,21 @@ public class MemoryStoreTest {
         Assert.assertFalse("should not be empty", store.isEmpty());
     }
 
+    @Test
+    public void testCountAndExists() throws JSONException {
+        store.save(new Data(1, "foo", "desc of foo"));
+        store.save(new Data(2, "bar", "desc of bar"));
+        store.save(new Data(3, "bar", "desc of bar"));
+
+        Assert.assertEquals(3, store.count());
+        Assert.assertTrue(store.exists(2));
+        Assert.assertFalse(store.exists(4));
+
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"name\":\"bar\"}"));
+        Assert.assertEquals(2, store.count(filter));
+    }
+
     @Test
     public void testSaveCollection() {
         List<Data> items = new ArrayList<Data>();
@@ -220,4 +268,69 @@ public class MemoryStoreTest {
         Assert.assertEquals("Should have " + items.size() + " items", items.size(), store.readAll().size());
     }
 
+    @Test
+    public void testChangeListener() {
+        final List<StoreChange> changes = new ArrayList<StoreChange>();
+        OnStoreChangedListener listener = new OnStoreChangedListener() {
+            @Override
+            public void onStoreChanged(Store<?> changedStore, StoreChange change) {
+                changes.add(change);
+            }
+        };
+        store.addOnChangeListener(listener);
+
+        List<Data> items = new ArrayList<Data>();
+        items.add(new Data(1, "Item 1", "This is the item 1"));
+        items.add(new Data(2, "Item 2", "This is the item 2"));
+        items.add(new Data(1, "Item 1", "This is the item 1 again"));
+        store.save(items);
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(2, changes.get(0).getInserted().size());
+        Assert.assertTrue(changes.get(0).getUpdated().isEmpty());
+
+        store.save(new Data(1, "Item 1", "Updated"));
+        Assert.assertEquals(Collections.<Object>singleton(1), changes.get(1).getUpdated());
+
+        store.remove(3);
+        Assert.assertEquals("removing a missing item is not reported", 2, changes.size());
+
+        store.reset();
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals(2, changes.get(2).getRemoved().size());
+
+        store.removeOnChangeListener(listener);
+        store.save(new Data(1, "Item 1", "This is the item 1"));
+        Assert.assertEquals(3, changes.size());
+    }
+
+    @Test
+    public void testMetrics() throws JSONException {
+        StoreMetrics metrics = new StoreMetrics();
+        MemoryStore<Data> measuredStore = new MemoryStore<Data>(stubIdGenerator);
+        measuredStore.setMetrics(metrics);
+
+        measuredStore.save(new Data(1, "Item 1", "This is the item 1"));
+        measuredStore.save(Arrays.asList(new Data(2, "Item 2", "This is the item 2"),
+                new Data(3, "Item 3", "This is the item 3")));
+        measuredStore.read(1);
+        measuredStore.readAll();
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"name\":\"Item 2\"}"));
+        measuredStore.readWithFilter(filter);
+        measuredStore.remove(1);
+
+        StoreMetrics.Snapshot snapshot = metrics.snapshot();
+        Assert.assertEquals(1, snapshot.getLatency(StoreMetrics.Operation.SAVE).getCount());
+        Assert.assertEquals(1, snapshot.getLatency(StoreMetrics.Operation.BULK_SAVE).getCount());
+        Assert.assertEquals(1, snapshot.getLatency(StoreMetrics.Operation.READ).getCount());
+        Assert.assertEquals(1, snapshot.getLatency(StoreMetrics.Operation.READ_ALL).getCount());
+        Assert.assertEquals(1, snapshot.getLatency(StoreMetrics.Operation.READ_WITH_FILTER).getCount());
+        Assert.assertEquals(1, snapshot.getLatency(StoreMetrics.Operation.REMOVE).getCount());
+        Assert.assertEquals(3, snapshot.getRowsWritten());
+        Assert.assertEquals("nothing is serialized in memory", 0, snapshot.getBytesWritten());
+
+        store.save(new Data(4, "Item 4", "This is the item 4"));
+        Assert.assertEquals("the default store isn't measured", 3, metrics.snapshot().getRowsWritten());
+    }
+
 }
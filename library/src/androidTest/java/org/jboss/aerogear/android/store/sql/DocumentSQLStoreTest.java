@@ -0,0 +1,377 @@
+/**
+ * JBoss, Home of Professional Open Source Copyright Red Hat, Inc., and
+ * individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.jboss.aerogear.android.store.sql;
+
+import android.content.Context;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+
+import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.store.DataManager;
+import org.jboss.aerogear.android.store.helper.Data;
+import org.jboss.aerogear.android.store.sql.SQLStoreTest.TrivialNestedClassWithCollection;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static android.support.test.InstrumentationRegistry.getContext;
+
+@RunWith(AndroidJUnit4.class)
+public class DocumentSQLStoreTest {
+
+    private Context context;
+    private DocumentSQLStore<Data> store;
+    private DocumentSQLStore<TrivialNestedClassWithCollection> nestedWithCollectionStore;
+
+    @SuppressWarnings("deprecation")
+    @Before
+    public void setUp() throws Exception {
+        this.context = new RenamingDelegatingContext(getContext(), UUID.randomUUID().toString());
+
+        this.store = (DocumentSQLStore) DataManager
+                .config("documentStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withStorageMode(SQLStoreConfiguration.StorageMode.DOCUMENT)
+                .withIndexedProperties("name")
+                .store(Data.class);
+
+        this.nestedWithCollectionStore = (DocumentSQLStore) DataManager
+                .config("documentNestedWithCollection", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withStorageMode(SQLStoreConfiguration.StorageMode.DOCUMENT)
+                .withIndexedProperties("text")
+                .store(TrivialNestedClassWithCollection.class);
+    }
+
+    @After
+    public void closeAll() {
+        this.store.close();
+        this.nestedWithCollectionStore.close();
+    }
+
+    @Test
+    public void testSave() {
+        Data data = new Data(10, "name", "description", true);
+        store.save(data);
+        Assert.assertEquals(data, store.read(10));
+        Assert.assertNull(store.read(11));
+    }
+
+    @Test
+    public void testSaveReplacesExistingItem() {
+        store.save(new Data(10, "name", "description"));
+        store.save(new Data(10, "name2", "description2"));
+
+        Assert.assertEquals(1, store.readAll().size());
+        Assert.assertEquals("name2", store.read(10).getName());
+    }
+
+    @Test
+    public void testResetAndIsEmpty() {
+        Assert.assertTrue(store.isEmpty());
+        store.save(new Data(10, "name", "description"));
+        Assert.assertFalse(store.isEmpty());
+        store.reset();
+        Assert.assertTrue(store.isEmpty());
+    }
+
+    @Test
+    public void testCountAndExists() throws JSONException {
+        loadBulkData();
+        Assert.assertEquals(6, store.count());
+        Assert.assertTrue(store.exists(1));
+        Assert.assertFalse(store.exists(7));
+
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"name\":\"name2\"}"));
+        Assert.assertEquals("indexed property", 3, store.count(filter));
+        filter.setWhere(new JSONObject("{\"description\":\"description2\"}"));
+        Assert.assertEquals("document property", 2, store.count(filter));
+        filter.setOffset(1);
+        Assert.assertEquals(1, store.count(filter));
+    }
+
+    @Test
+    public void testRemove() {
+        loadBulkData();
+        store.remove(1);
+
+        List<Data> allData = new ArrayList<Data>(store.readAll());
+        Collections.sort(allData);
+        Assert.assertEquals(5, allData.size());
+        Assert.assertEquals(2l, (long) allData.get(0).getId());
+    }
+
+    @Test
+    public void testRemoveCollectionAndFilter() throws JSONException {
+        loadBulkData();
+        store.remove(Arrays.asList(1, 2, 7));
+        Assert.assertEquals(4, store.readAll().size());
+
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"description\":\"description2\"}"));
+        store.removeWithFilter(filter);
+
+        List<Data> allData = new ArrayList<Data>(store.readAll());
+        Collections.sort(allData);
+        Assert.assertEquals(2, allData.size());
+        Assert.assertEquals(3l, (long) allData.get(0).getId());
+        Assert.assertEquals(4l, (long) allData.get(1).getId());
+    }
+
+    @Test
+    public void testFilter() throws JSONException {
+        ReadFilter filter;
+        JSONObject where;
+        List<Data> result;
+
+        loadBulkData();
+
+        result = store.readWithFilter(null);
+        Assert.assertEquals(6, result.size());
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("name", "name2");
+        filter.setWhere(where);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(3, result.size());
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("name", "name2");
+        where.put("description", "description");
+        filter.setWhere(where);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(2, result.size());
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("id", 5);
+        filter.setWhere(where);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("description2", result.get(0).getDescription());
+    }
+
+    @Test
+    public void testFilterPerPage() throws JSONException {
+        ReadFilter filter;
+        JSONObject where;
+        List<Data> result;
+
+        loadBulkData();
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("name", "name2");
+        filter.setWhere(where);
+        filter.setLimit(2);
+        filter.setOffset(1);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(4l, (long) result.get(0).getId());
+        Assert.assertEquals(6l, (long) result.get(1).getId());
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("description", "description");
+        filter.setWhere(where);
+        filter.setLimit(1);
+        filter.setOffset(3);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(4l, (long) result.get(0).getId());
+    }
+
+    @Test
+    public void testNestedListSaveAndFilter() throws JSONException {
+        List<Data> data = new ArrayList<Data>();
+        data.add(new Data(10, "name1", "description"));
+        data.add(new Data(30, "name2", "description"));
+
+        TrivialNestedClassWithCollection newNested = new TrivialNestedClassWithCollection();
+        newNested.setId(1);
+        newNested.setText("nestedText1");
+        newNested.setData(data);
+        nestedWithCollectionStore.save(newNested);
+
+        data = new ArrayList<Data>();
+        data.add(new Data(10, "name3", "description"));
+
+        newNested = new TrivialNestedClassWithCollection();
+        newNested.setId(2);
+        newNested.setText("nestedText2");
+        newNested.setData(data);
+        nestedWithCollectionStore.save(newNested);
+
+        ReadFilter filter = new ReadFilter();
+        JSONObject where = new JSONObject();
+        where.put("data[%].name", "name2");
+        filter.setWhere(where);
+        List<TrivialNestedClassWithCollection> result = nestedWithCollectionStore.readWithFilter(filter);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(2, result.get(0).getData().size());
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("text", "nestedText2");
+        filter.setWhere(where);
+        result = nestedWithCollectionStore.readWithFilter(filter);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals((Integer) 2, result.get(0).getId());
+    }
+
+    @Test
+    public void testFilterOnIndexedBooleanProperty() throws JSONException {
+        store.close();
+        store = openStore("enable", "name");
+        store.save(new Data(1, "name", "description", true));
+        store.save(new Data(2, "name2", "description", true));
+        store.save(new Data(3, "name2", "description", false));
+
+        ReadFilter filter = new ReadFilter();
+        JSONObject where = new JSONObject();
+        where.put("enable", true);
+        filter.setWhere(where);
+        Assert.assertEquals(2, store.readWithFilter(filter).size());
+
+        where.put("name", "name2");
+        filter.setWhere(where);
+        List<Data> result = store.readWithFilter(filter);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(2l, (long) result.get(0).getId());
+        Assert.assertEquals(1, store.count(filter));
+    }
+
+    @Test
+    public void testFilterOperatorsAreRejected() throws JSONException {
+        loadBulkData();
+        String[] wheres = {
+                "{\"id\":{\"$gt\":3}}",
+                "{\"name\":{\"$in\":[\"name\",\"name2\"]}}",
+                "{\"$or\":[{\"name\":\"name\"},{\"description\":\"description2\"}]}"
+        };
+        for (String where : wheres) {
+            ReadFilter filter = new ReadFilter();
+            filter.setWhere(new JSONObject(where));
+            try {
+                store.readWithFilter(filter);
+                Assert.fail(where + " should be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIndexedPropertyThroughArrayIsRejected() {
+        DataManager.config("documentArrayPath", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withStorageMode(SQLStoreConfiguration.StorageMode.DOCUMENT)
+                .withIndexedProperties("data[%].name")
+                .store(TrivialNestedClassWithCollection.class);
+    }
+
+    @Test
+    public void testIndexedPropertyAddedToExistingDocuments() throws JSONException {
+        loadBulkData();
+        store.close();
+
+        store = (DocumentSQLStore) DataManager
+                .config("documentStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withStorageMode(SQLStoreConfiguration.StorageMode.DOCUMENT)
+                .withIndexedProperties("name", "description")
+                .store(Data.class);
+
+        ReadFilter filter = new ReadFilter();
+        JSONObject where = new JSONObject();
+        where.put("description", "description2");
+        filter.setWhere(where);
+        Assert.assertEquals(2, store.readWithFilter(filter).size());
+    }
+
+    @Test
+    public void testIndexedPropertyIndexedAgainAfterBeingDropped() throws JSONException {
+        store.close();
+        store = openStore("name", "description");
+        loadBulkData();
+        store.close();
+
+        store = openStore("name");
+        store.save(new Data(7, "name", "description2"));
+        store.close();
+
+        store = openStore("name", "description");
+        ReadFilter filter = new ReadFilter();
+        JSONObject where = new JSONObject();
+        where.put("description", "description2");
+        filter.setWhere(where);
+        Assert.assertEquals(3, store.readWithFilter(filter).size());
+    }
+
+    @Test
+    public void testIndexedPropertiesNamedLikeStoreColumns() throws JSONException {
+        loadBulkData();
+        store.close();
+
+        store = (DocumentSQLStore) DataManager
+                .config("documentStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withStorageMode(SQLStoreConfiguration.StorageMode.DOCUMENT)
+                .withIndexedProperties("name", "Name", "id", "document")
+                .store(Data.class);
+
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"id\":5}"));
+        List<Data> result = store.readWithFilter(filter);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("description2", result.get(0).getDescription());
+
+        filter.setWhere(new JSONObject("{\"name\":\"name2\"}"));
+        Assert.assertEquals(3, store.readWithFilter(filter).size());
+    }
+
+    private DocumentSQLStore<Data> openStore(String... indexedProperties) {
+        return (DocumentSQLStore) DataManager
+                .config("documentStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withStorageMode(SQLStoreConfiguration.StorageMode.DOCUMENT)
+                .withIndexedProperties(indexedProperties)
+                .store(Data.class);
+    }
+
+    private void loadBulkData() {
+        store.save(new Data(1, "name", "description"));
+        store.save(new Data(2, "name", "description"));
+        store.save(new Data(3, "name2", "description"));
+        store.save(new Data(4, "name2", "description"));
+        store.save(new Data(5, "name", "description2"));
+        store.save(new Data(6, "name2", "description2"));
+    }
+
+}
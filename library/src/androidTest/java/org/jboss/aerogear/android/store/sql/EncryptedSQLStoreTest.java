@@ -17,6 +17,7 @@
 package org.jboss.aerogear.android.store.sql;
 
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.StrictMode;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
@@ -35,6 +36,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -155,6 +158,36 @@ public class EncryptedSQLStoreTest {
         Assert.assertEquals("Store should have 1 elements", 1, store.readAll().size());
     }
 
+    @Test
+    public void testSaveReplacesExistingItem() {
+        store.save(new Data(10, "name", "description"));
+        store.save(new Data(10, "name2", "description2"));
+
+        Assert.assertEquals("Store should have 1 elements", 1, store.readAll().size());
+        Assert.assertEquals("name2", store.read(10).getName());
+    }
+
+    @Test
+    public void testTuningPragmas() {
+        EncryptedSQLStore<Data> tunedStore = (EncryptedSQLStore<Data>) DataManager
+                .config("tunedStore", EncryptedSQLStoreConfiguration.class)
+                .withContext(context)
+                .usingPassphrase("AeroGear")
+                .withCacheSize(-4096)
+                .withSynchronous(SynchronousMode.NORMAL)
+                .store(Data.class);
+        try {
+            tunedStore.save(new Data(10, "name", "description"));
+            Assert.assertEquals("name", tunedStore.read(10).getName());
+
+            SQLiteDatabase database = tunedStore.getWritableDatabase();
+            Assert.assertEquals(-4096, SQLStoreTest.queryPragma(database, "cache_size"));
+            Assert.assertEquals(1, SQLStoreTest.queryPragma(database, "synchronous"));
+        } finally {
+            tunedStore.close();
+        }
+    }
+
     @Test
     public void testReset() {
         Data data = new Data(10, "name", "description");
@@ -175,6 +208,18 @@ public class EncryptedSQLStoreTest {
         Assert.assertEquals("Store should have 9 elements", 9, store.readAll().size());
     }
 
+    @Test
+    public void testRemoveCollection() {
+        for (int i = 1; i <= 10; i++) {
+            Data data = new Data(i, "name " + i, "description " + i);
+            store.save(data);
+        }
+
+        store.remove(Arrays.asList(1, 2, 3));
+        Assert.assertEquals("Store should have 7 elements", 7, store.readAll().size());
+        Assert.assertNull(store.read(1));
+    }
+
     @Test
     public void testIsEmpty() {
         assertTrue("Store can empty", store.isEmpty());
@@ -188,6 +233,19 @@ public class EncryptedSQLStoreTest {
         assertFalse("Store can not be empty", store.isEmpty());
     }
 
+    @Test
+    public void testCountAndExists() {
+        Assert.assertEquals(0, store.count());
+
+        store.save(new Data(10, "name", "description"));
+        store.save(new Data(11, "name", "description"));
+        store.save(new Data(10, "name2", "description"));
+
+        Assert.assertEquals(2, store.count());
+        Assert.assertTrue(store.exists(10));
+        Assert.assertFalse(store.exists(12));
+    }
+
     @Test
     public void testSaveCollection() {
         List<Data> items = new ArrayList<Data>();
@@ -205,4 +263,25 @@ public class EncryptedSQLStoreTest {
         Assert.assertEquals("Should have " + items.size() + " items", items.size(), store.readAll().size());
         store.close();
     }
+
+    @Test
+    public void testSlowQueryLog() {
+        SlowQueryLog log = new SlowQueryLog(0, 10);
+        EncryptedSQLStore<Data> loggedStore = (EncryptedSQLStore<Data>) DataManager
+                .config("loggedStore", EncryptedSQLStoreConfiguration.class)
+                .withContext(context)
+                .usingPassphrase("AeroGear")
+                .withSlowQueryLog(log)
+                .store(Data.class);
+        loggedStore.openSync();
+
+        loggedStore.save(new Data(10, "name", "description"));
+        Assert.assertEquals("name", loggedStore.read(10).getName());
+
+        List<SlowQueryLog.Entry> entries = log.getEntries();
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals(Collections.singletonList("text[2]"), entries.get(0).getArgumentShapes());
+        Assert.assertFalse(entries.get(0).getPlan().isEmpty());
+        loggedStore.close();
+    }
 }
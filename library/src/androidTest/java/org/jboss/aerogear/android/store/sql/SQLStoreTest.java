@@ -17,16 +17,27 @@
 package org.jboss.aerogear.android.store.sql;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.StrictMode;
 import android.support.test.runner.AndroidJUnit4;
 import android.test.RenamingDelegatingContext;
+import android.util.Log;
+
+import com.google.gson.GsonBuilder;
 
 import org.jboss.aerogear.android.core.Callback;
 import org.jboss.aerogear.android.core.ReadFilter;
 import org.jboss.aerogear.android.core.RecordId;
 import org.jboss.aerogear.android.store.DataManager;
+import org.jboss.aerogear.android.store.OnStoreChangedListener;
 import org.jboss.aerogear.android.store.Store;
+import org.jboss.aerogear.android.store.StoreChange;
+import org.jboss.aerogear.android.store.StoreMetrics;
+import org.jboss.aerogear.android.store.generator.DefaultIdGenerator;
 import org.jboss.aerogear.android.store.helper.Data;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.After;
@@ -36,15 +47,20 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static android.support.test.InstrumentationRegistry.getContext;
 
@@ -163,6 +179,24 @@ public class SQLStoreTest {
         Assert.assertFalse(store.isEmpty());
     }
 
+    @Test
+    public void testCountAndExists() throws InterruptedException, JSONException {
+        Assert.assertEquals(0, store.count());
+        Assert.assertFalse(store.exists(1));
+
+        loadBulkData();
+        Assert.assertEquals(6, store.count());
+        Assert.assertTrue(store.exists(1));
+        Assert.assertFalse(store.exists(7));
+
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"name\":\"name2\"}"));
+        Assert.assertEquals(3, store.count(filter));
+        filter.setLimit(2);
+        Assert.assertEquals(2, store.count(filter));
+        Assert.assertEquals(6, store.count(new ReadFilter()));
+    }
+
     @Test
     public void testReadAll() throws InterruptedException, JSONException {
         loadBulkData();
@@ -174,6 +208,26 @@ public class SQLStoreTest {
 
     }
 
+    @Test
+    public void testIterateAll() throws InterruptedException {
+        loadBulkData();
+        List<Data> allData = new ArrayList<Data>();
+        StoreIterator<Data> iterator = store.iterateAll();
+        while (iterator.hasNext()) {
+            allData.add(iterator.next());
+        }
+        Assert.assertFalse(iterator.hasNext());
+
+        Collections.sort(allData);
+        Assert.assertEquals(6, allData.size());
+        Assert.assertEquals(new ArrayList<Data>(store.readAll()), allData);
+
+        iterator = store.iterateAll();
+        Assert.assertNotNull(iterator.next());
+        iterator.close();
+        Assert.assertFalse(iterator.hasNext());
+    }
+
     @Test
     public void testRemove() throws InterruptedException, JSONException {
         loadBulkData();
@@ -187,6 +241,72 @@ public class SQLStoreTest {
 
     }
 
+    @Test
+    public void testRemoveCollection() {
+        List<Data> items = new ArrayList<Data>();
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 1; i <= 2500; i++) {
+            items.add(new Data(i, "name " + i, "description " + i));
+            if (i % 2 == 0) {
+                ids.add(i);
+            }
+        }
+        store.save(items);
+
+        final List<StoreChange> changes = new ArrayList<StoreChange>();
+        store.addOnChangeListener(new OnStoreChangedListener() {
+            @Override
+            public void onStoreChanged(Store<?> changedStore, StoreChange change) {
+                changes.add(change);
+            }
+        });
+        ids.add(5000);
+        store.remove(ids);
+
+        Assert.assertEquals(1250, store.readAll().size());
+        Assert.assertNull(store.read(2));
+        Assert.assertNotNull(store.read(2499));
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(1250, changes.get(0).getRemoved().size());
+        Assert.assertFalse(changes.get(0).getRemoved().contains(5000));
+    }
+
+    @Test
+    public void testRemoveWithFilter() throws InterruptedException, JSONException {
+        loadBulkData();
+        final List<StoreChange> changes = new ArrayList<StoreChange>();
+        store.addOnChangeListener(new OnStoreChangedListener() {
+            @Override
+            public void onStoreChanged(Store<?> changedStore, StoreChange change) {
+                changes.add(change);
+            }
+        });
+
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"name\":\"name2\",\"description\":\"description\"}"));
+        store.removeWithFilter(filter);
+        Assert.assertEquals("ids are reported with the type they were saved with",
+                new HashSet<Serializable>(Arrays.<Serializable>asList(3, 4)), changes.get(0).getRemoved());
+
+        List<Data> allData = new ArrayList<Data>(store.readAll());
+        Collections.sort(allData);
+        Assert.assertEquals(4, allData.size());
+        Assert.assertEquals(5l, (long) allData.get(2).getId());
+        Assert.assertEquals(6l, (long) allData.get(3).getId());
+
+        filter.setWhere(new JSONObject());
+        filter.setLimit(2);
+        filter.setOffset(1);
+        store.removeWithFilter(filter);
+        Assert.assertNotNull(store.read(1));
+        Assert.assertNull(store.read(2));
+        Assert.assertNull(store.read(5));
+        Assert.assertNotNull(store.read(6));
+
+        store.removeWithFilter(new ReadFilter());
+        Assert.assertTrue(store.isEmpty());
+    }
+
     @Test
     public void testFilter() throws InterruptedException, JSONException {
         ReadFilter filter;
@@ -215,6 +335,251 @@ public class SQLStoreTest {
 
     }
 
+    @Test
+    public void testFilterPerPage() throws InterruptedException, JSONException {
+        ReadFilter filter;
+        JSONObject where;
+        List<Data> result;
+
+        loadBulkData();
+
+        filter = new ReadFilter();
+        filter.setLimit(2);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(1l, (long) result.get(0).getId());
+        Assert.assertEquals(2l, (long) result.get(1).getId());
+
+        filter.setOffset(5);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(6l, (long) result.get(0).getId());
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("name", "name2");
+        filter.setWhere(where);
+        filter.setLimit(2);
+        filter.setOffset(1);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(4l, (long) result.get(0).getId());
+        Assert.assertEquals(6l, (long) result.get(1).getId());
+
+    }
+
+    @Test
+    public void testFilterRange() throws InterruptedException, JSONException {
+        ReadFilter filter;
+        JSONObject where;
+        List<Data> result;
+
+        loadBulkData();
+        saveData(10, "name", "description");
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("id", new JSONObject().put("$gt", 2).put("$lte", 5));
+        filter.setWhere(where);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals(3l, (long) result.get(0).getId());
+        Assert.assertEquals(5l, (long) result.get(2).getId());
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("id", new JSONObject().put("$gte", 6));
+        where.put("name", "name");
+        filter.setWhere(where);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(10l, (long) result.get(0).getId());
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("description", new JSONObject().put("$gt", "description"));
+        filter.setWhere(where);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(2, result.size());
+    }
+
+    @Test
+    public void testFilterOperators() throws InterruptedException, JSONException {
+        ReadFilter filter;
+        JSONObject where;
+        List<Data> result;
+
+        loadBulkData();
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("id", new JSONObject().put("$in", new JSONArray().put(1).put(4).put(7)));
+        filter.setWhere(where);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(1l, (long) result.get(0).getId());
+        Assert.assertEquals(4l, (long) result.get(1).getId());
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("name", new JSONObject().put("$ne", "name"));
+        where.put("description", new JSONObject().put("$eq", "description"));
+        filter.setWhere(where);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(3l, (long) result.get(0).getId());
+        Assert.assertEquals(4l, (long) result.get(1).getId());
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("name", "name2");
+        where.put("$or", new JSONArray()
+                .put(new JSONObject().put("description", "description2"))
+                .put(new JSONObject().put("id", new JSONObject().put("$lt", 4))));
+        filter.setWhere(where);
+        result = store.readWithFilter(filter);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(3l, (long) result.get(0).getId());
+        Assert.assertEquals(6l, (long) result.get(1).getId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFilterWithUnknownOperator() throws InterruptedException, JSONException {
+        loadBulkData();
+
+        ReadFilter filter = new ReadFilter();
+        JSONObject where = new JSONObject();
+        where.put("id", new JSONObject().put("$regex", "1"));
+        filter.setWhere(where);
+        store.readWithFilter(filter);
+    }
+
+    @Test
+    public void testUpgradeFromUntypedProperties() throws JSONException {
+        SQLiteDatabase database = context.openOrCreateDatabase("legacyData", Context.MODE_PRIVATE, null);
+        database.execSQL("create table legacyData_property (_ID integer primary key autoincrement,"
+                + " PARENT_ID text not null, PROPERTY_NAME text not null, PROPERTY_VALUE text)");
+        for (int id = 1; id <= 3; id++) {
+            database.execSQL("insert into legacyData_property (PARENT_ID, PROPERTY_NAME, PROPERTY_VALUE) values (?, ?, ?)",
+                    new Object[]{String.valueOf(id), "id", String.valueOf(id)});
+            database.execSQL("insert into legacyData_property (PARENT_ID, PROPERTY_NAME, PROPERTY_VALUE) values (?, ?, ?)",
+                    new Object[]{String.valueOf(id), "name", "0" + id});
+        }
+        database.setVersion(1);
+        database.close();
+
+        SQLStore<Data> legacyStore = new SQLStore<Data>(Data.class, context, new GsonBuilder(),
+                new DefaultIdGenerator(), "legacyData");
+        try {
+            ReadFilter filter = new ReadFilter();
+            JSONObject where = new JSONObject();
+            where.put("id", new JSONObject().put("$gte", 2));
+            filter.setWhere(where);
+            List<Data> result = legacyStore.readWithFilter(filter);
+            Assert.assertEquals(2, result.size());
+            Assert.assertEquals("02", result.get(0).getName());
+
+            where = new JSONObject();
+            where.put("name", new JSONObject().put("$gt", 1));
+            filter.setWhere(where);
+            Assert.assertTrue(legacyStore.readWithFilter(filter).isEmpty());
+        } finally {
+            legacyStore.close();
+        }
+    }
+
+    @Test
+    public void testUpgradeToEntityTable() {
+        SQLiteDatabase database = context.openOrCreateDatabase("textIdData", Context.MODE_PRIVATE, null);
+        database.execSQL("create table textIdData_property (_ID integer primary key autoincrement,"
+                + " PARENT_ID text not null, PROPERTY_NAME text not null, PROPERTY_VALUE text,"
+                + " PROPERTY_NUMBER real, PROPERTY_TYPE integer)");
+        database.execSQL("create index textIdData_property_parent_index on textIdData_property (PARENT_ID)");
+        String[] ids = {"b1e4c8a0-6b1f-4a47-9a4e-3f3c2b6d0a11", "0c7d5f2e-91aa-4c1b-8d3e-7e2f6a9b4c22"};
+        for (String id : ids) {
+            database.execSQL("insert into textIdData_property (PARENT_ID, PROPERTY_NAME, PROPERTY_VALUE, PROPERTY_TYPE)"
+                    + " values (?, 'id', ?, 0)", new Object[]{id, id});
+            database.execSQL("insert into textIdData_property (PARENT_ID, PROPERTY_NAME, PROPERTY_VALUE, PROPERTY_TYPE)"
+                    + " values (?, 'name', ?, 0)", new Object[]{id, "name of " + id});
+            database.execSQL("insert into textIdData_property (PARENT_ID, PROPERTY_NAME, PROPERTY_VALUE, PROPERTY_TYPE)"
+                    + " values (?, 'enable', 'true', 2)", new Object[]{id});
+        }
+        database.setVersion(2);
+        database.close();
+
+        SQLStore<StringIdData> upgradedStore = new SQLStore<StringIdData>(StringIdData.class, context, new GsonBuilder(),
+                new DefaultIdGenerator(), "textIdData");
+        try {
+            Assert.assertEquals(2, upgradedStore.count());
+            Assert.assertEquals("name of " + ids[0], upgradedStore.read(ids[0]).name);
+            Assert.assertTrue(upgradedStore.read(ids[1]).enable);
+
+            upgradedStore.remove(ids[0]);
+            Assert.assertFalse(upgradedStore.exists(ids[0]));
+            Assert.assertEquals(3, DatabaseUtils.queryNumEntries(upgradedStore.getWritableDatabase(), "textIdData_property"));
+
+            StringIdData item = upgradedStore.read(ids[1]);
+            item.name = "new name";
+            upgradedStore.save(item);
+            Assert.assertEquals(1, upgradedStore.readAll().size());
+            Assert.assertEquals("new name", upgradedStore.read(ids[1]).name);
+        } finally {
+            upgradedStore.close();
+        }
+    }
+
+    @Test
+    public void testUpgradeToNameDictionary() throws JSONException {
+        SQLiteDatabase database = context.openOrCreateDatabase("namedData", Context.MODE_PRIVATE, null);
+        database.execSQL("create table namedData_entity (_ID integer primary key, ENTITY_ID text not null unique)");
+        database.execSQL("create table namedData_property (_ID integer primary key autoincrement,"
+                + " PARENT_ID integer not null, PROPERTY_NAME text not null, PROPERTY_VALUE text,"
+                + " PROPERTY_NUMBER real, PROPERTY_TYPE integer)");
+        database.execSQL("create trigger namedData_entity_delete after delete on namedData_entity"
+                + " begin delete from namedData_property where PARENT_ID = old._ID; end");
+        for (int id = 1; id <= 2; id++) {
+            database.execSQL("insert into namedData_entity (_ID, ENTITY_ID) values (?, ?)", new Object[]{id, String.valueOf(id)});
+            database.execSQL("insert into namedData_property (PARENT_ID, PROPERTY_NAME, PROPERTY_VALUE, PROPERTY_NUMBER, PROPERTY_TYPE)"
+                    + " values (?, 'id', ?, ?, 1)", new Object[]{id, String.valueOf(id), id});
+            database.execSQL("insert into namedData_property (PARENT_ID, PROPERTY_NAME, PROPERTY_VALUE, PROPERTY_TYPE)"
+                    + " values (?, 'name', ?, 0)", new Object[]{id, "name " + id});
+        }
+        database.setVersion(3);
+        database.close();
+
+        SQLStore<Data> upgradedStore = new SQLStore<Data>(Data.class, context, new GsonBuilder(),
+                new DefaultIdGenerator(), "namedData");
+        try {
+            Assert.assertEquals("name 1", upgradedStore.read(1).getName());
+
+            ReadFilter filter = new ReadFilter();
+            filter.setWhere(new JSONObject("{\"name\":\"name 2\"}"));
+            List<Data> result = upgradedStore.readWithFilter(filter);
+            Assert.assertEquals(1, result.size());
+            Assert.assertEquals(2, result.get(0).getId().intValue());
+
+            upgradedStore.save(new Data(3, "name 3", "description 3"));
+            upgradedStore.remove(1);
+            Assert.assertEquals(2, upgradedStore.count());
+            SQLiteDatabase upgraded = upgradedStore.getWritableDatabase();
+            Assert.assertEquals(4, DatabaseUtils.queryNumEntries(upgraded, "namedData_name"));
+            Assert.assertEquals(6, DatabaseUtils.queryNumEntries(upgraded, "namedData_property"));
+        } finally {
+            upgradedStore.close();
+        }
+
+        SQLStore<Data> reopenedStore = new SQLStore<Data>(Data.class, context, new GsonBuilder(),
+                new DefaultIdGenerator(), "namedData");
+        try {
+            Assert.assertEquals("description 3", reopenedStore.read(3).getDescription());
+            ReadFilter filter = new ReadFilter();
+            filter.setWhere(new JSONObject("{\"unknown\":\"value\"}"));
+            Assert.assertTrue(reopenedStore.readWithFilter(filter).isEmpty());
+        } finally {
+            reopenedStore.close();
+        }
+    }
+
     @Test
     public void testNestedSaveAndFilter() throws InterruptedException, JSONException {
         ReadFilter filter;
@@ -319,6 +684,57 @@ public class SQLStoreTest {
 
     }
 
+    @Test
+    public void testFilterMatchingSeveralArrayElements() throws InterruptedException, JSONException {
+        ReadFilter filter;
+        JSONObject where;
+        List<TrivialNestedClassWithCollection> result;
+
+        List<Data> data = new ArrayList<Data>();
+        data.add(new Data(10, "name", "description"));
+        data.add(new Data(30, "name", "description"));
+
+        TrivialNestedClassWithCollection newNested = new TrivialNestedClassWithCollection();
+        newNested.setId(1);
+        newNested.setText("nestedText");
+        newNested.setData(data);
+
+        nestedWithCollectionStore.openSync();
+        nestedWithCollectionStore.save(newNested);
+
+        filter = new ReadFilter();
+        where = new JSONObject();
+        where.put("data[%].name", "name");
+        where.put("text", "nestedText");
+
+        filter.setWhere(where);
+        result = nestedWithCollectionStore.readWithFilter(filter);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(2, result.get(0).data.size());
+
+    }
+
+    @Test
+    public void testDeeplyNestedSave() {
+        TrivialNestedClass nested = new TrivialNestedClass();
+        nested.setId(2);
+        nested.setText("nestedText");
+        nested.setData(new Data(10, "name", "description"));
+
+        TrivialDeeplyNestedClass deeplyNested = new TrivialDeeplyNestedClass();
+        deeplyNested.setId(1);
+        deeplyNested.setNested(nested);
+
+        SQLStore<TrivialDeeplyNestedClass> deeplyNestedStore = new SQLStore<TrivialDeeplyNestedClass>(TrivialDeeplyNestedClass.class, context);
+        deeplyNestedStore.openSync();
+        deeplyNestedStore.save(deeplyNested);
+
+        TrivialDeeplyNestedClass result = deeplyNestedStore.read(1);
+        Assert.assertEquals("nestedText", result.getNested().getText());
+        Assert.assertEquals("name", result.getNested().getData().getName());
+        deeplyNestedStore.close();
+    }
+
     @Test
     public void testSuccessCallback() throws InterruptedException {
         final CountDownLatch latch = new CountDownLatch(2);
@@ -364,6 +780,504 @@ public class SQLStoreTest {
 
     }
 
+    @Test
+    public void testSaveReplacesExistingItem() throws InterruptedException {
+        saveData(10, "name", "description");
+        saveData(10, "name2", "description2");
+
+        Collection<Data> allData = store.readAll();
+        Assert.assertEquals(1, allData.size());
+        Assert.assertEquals("name2", allData.iterator().next().getName());
+        Assert.assertEquals("description2", store.read(10).getDescription());
+    }
+
+    @Test
+    public void testSaveWritesOnlyChangedProperties() throws InterruptedException {
+        saveData(10, "name", "description", true);
+        long written = store.getRowsWritten();
+        long skipped = store.getRowsSkipped();
+
+        saveData(10, "name2", "description", true);
+        Assert.assertEquals(1, store.getRowsWritten() - written);
+        Assert.assertEquals(3, store.getRowsSkipped() - skipped);
+        Assert.assertEquals("name2", store.read(10).getName());
+
+        written = store.getRowsWritten();
+        store.save(new Data(10, null, "description", true));
+        Assert.assertEquals(1, store.getRowsWritten() - written);
+        Assert.assertNull(store.read(10).getName());
+    }
+
+    @Test
+    public void testSaveListTwiceDoesNotDuplicateElements() throws InterruptedException {
+        SQLStore<ListWithId> longStore = new SQLStore<ListWithId>(ListWithId.class, context);
+        longStore.openSync();
+        ListWithId<Long> longList = new ListWithId<Long>(10);
+
+        longList.setId(1);
+
+        for (long i = 0; i < 10; i++) {
+            longList.data.add(i);
+        }
+        longStore.save(longList);
+        longStore.save(longList);
+        Assert.assertEquals(1, longStore.readAll().size());
+        Assert.assertEquals(10, longStore.read(1).data.size());
+        longStore.close();
+
+    }
+
+    @Test
+    public void testIndexedProperties() throws InterruptedException, JSONException {
+        saveData(1, "name 1", "description 1");
+        Assert.assertTrue(indexNames(store.getWritableDatabase()).contains("Data_property_name_value_index"));
+        store.close();
+
+        SQLStore<Data> indexedStore = (SQLStore) DataManager
+                .config("indexedStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withIndexedProperties("name")
+                .store(Data.class);
+        try {
+            indexedStore.save(new Data(2, "name 2", "description 2"));
+
+            SQLiteDatabase database = indexedStore.getWritableDatabase();
+            List<String> indexes = indexNames(database);
+            String[] version = DatabaseUtils.stringForQuery(database, "select sqlite_version()", null).split("\\.");
+            if (Integer.parseInt(version[0]) == 3 && Integer.parseInt(version[1]) < 8) {
+                // no partial indexes before SQLite 3.8.0, every property stays indexed
+                Assert.assertEquals(indexes.toString(), 4, indexes.size());
+            } else {
+                Assert.assertEquals(indexes.toString(), 3, indexes.size());
+                Assert.assertTrue(indexes.contains("Data_property_parent_index"));
+                Assert.assertFalse(indexes.contains("Data_property_name_index"));
+
+                long nameId = DatabaseUtils.longForQuery(database, "select _ID from Data_name where NAME = 'name'", null);
+                Cursor plan = database.rawQuery("explain query plan select PARENT_ID from Data_property"
+                        + " where NAME_ID = " + nameId + " and PROPERTY_VALUE = ?", new String[]{"name 2"});
+                try {
+                    Assert.assertTrue(plan.moveToFirst());
+                    Assert.assertTrue(plan.getString(3), plan.getString(3).contains("Data_property_name_value_"));
+                } finally {
+                    plan.close();
+                }
+            }
+
+            ReadFilter filter = new ReadFilter();
+            filter.setWhere(new JSONObject("{\"name\":\"name 2\"}"));
+            Assert.assertEquals(2, indexedStore.readWithFilter(filter).get(0).getId().intValue());
+            filter.setWhere(new JSONObject("{\"description\":\"description 1\"}"));
+            Assert.assertEquals("unindexed properties can be filtered on",
+                    1, indexedStore.readWithFilter(filter).get(0).getId().intValue());
+        } finally {
+            indexedStore.close();
+        }
+
+        store = new SQLStore<Data>(Data.class, context);
+        store.openSync();
+        Assert.assertEquals(4, indexNames(store.getWritableDatabase()).size());
+    }
+
+    private static List<String> indexNames(SQLiteDatabase database) {
+        List<String> names = new ArrayList<String>();
+        Cursor cursor = database.rawQuery("select name from sqlite_master where type = 'index' and sql is not null", null);
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+
+    @Test
+    public void testClusteredProperties() throws InterruptedException, JSONException {
+        saveData(1, "name 1", "description 1");
+        store.close();
+
+        SQLStore<Data> clusteredStore = (SQLStore) DataManager
+                .config("clusteredStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withClusteredProperties(true)
+                .store(Data.class);
+        try {
+            clusteredStore.save(new Data(2, "name 2", "description 2"));
+
+            SQLiteDatabase database = clusteredStore.getWritableDatabase();
+            String sql = DatabaseUtils.stringForQuery(database,
+                    "select sql from sqlite_master where type = 'table' and name = 'Data_property'", null);
+            String[] version = DatabaseUtils.stringForQuery(database, "select sqlite_version()", null).split("\\.");
+            int minor = Integer.parseInt(version[1]);
+            int patch = version.length > 2 ? Integer.parseInt(version[2]) : 0;
+            if (Integer.parseInt(version[0]) == 3 && (minor < 8 || (minor == 8 && patch < 2))) {
+                // no tables without rowid before SQLite 3.8.2, the rowid layout is kept
+                Assert.assertFalse(sql, sql.contains("without rowid"));
+            } else {
+                Assert.assertTrue(sql, sql.contains("without rowid"));
+                Assert.assertFalse(indexNames(database).contains("Data_property_parent_index"));
+            }
+
+            Assert.assertEquals("name 1", clusteredStore.read(1).getName());
+            ReadFilter filter = new ReadFilter();
+            filter.setWhere(new JSONObject("{\"name\":\"name 2\"}"));
+            Assert.assertEquals(2, clusteredStore.readWithFilter(filter).get(0).getId().intValue());
+            clusteredStore.remove(1);
+            Assert.assertEquals(1, clusteredStore.readAll().size());
+        } finally {
+            clusteredStore.close();
+        }
+
+        store = new SQLStore<Data>(Data.class, context);
+        store.openSync();
+        String sql = DatabaseUtils.stringForQuery(store.getWritableDatabase(),
+                "select sql from sqlite_master where type = 'table' and name = 'Data_property'", null);
+        Assert.assertFalse(sql, sql.contains("without rowid"));
+        Assert.assertEquals("description 2", store.read(2).getDescription());
+        Assert.assertEquals(4, indexNames(store.getWritableDatabase()).size());
+    }
+
+    @Test
+    public void testClusteredPropertiesAfterUpgradeWithDuplicateRows() {
+        SQLiteDatabase database = context.openOrCreateDatabase("duplicatedData", Context.MODE_PRIVATE, null);
+        database.execSQL("create table duplicatedData_property (_ID integer primary key autoincrement,"
+                + " PARENT_ID text not null, PROPERTY_NAME text not null, PROPERTY_VALUE text)");
+        String[][] rows = {{"1", "id", "1"}, {"1", "name", "old name"}, {"2", "id", "2"}, {"2", "name", "name 2"},
+                {"1", "id", "1"}, {"1", "name", "new name"}};
+        for (String[] row : rows) {
+            database.execSQL("insert into duplicatedData_property (PARENT_ID, PROPERTY_NAME, PROPERTY_VALUE) values (?, ?, ?)",
+                    row);
+        }
+        database.setVersion(1);
+        database.close();
+
+        SQLStore<Data> clusteredStore = new SQLStore<Data>(Data.class, context, new GsonBuilder(),
+                new DefaultIdGenerator(), "duplicatedData");
+        clusteredStore.setClusteredProperties(true);
+        try {
+            clusteredStore.openSync();
+            Assert.assertEquals("new name", clusteredStore.read(1).getName());
+            Assert.assertEquals("name 2", clusteredStore.read(2).getName());
+
+            SQLiteDatabase upgraded = clusteredStore.getWritableDatabase();
+            String sql = DatabaseUtils.stringForQuery(upgraded,
+                    "select sql from sqlite_master where type = 'table' and name = 'duplicatedData_property'", null);
+            if (sql.contains("without rowid")) {
+                Assert.assertEquals(4, DatabaseUtils.queryNumEntries(upgraded, "duplicatedData_property"));
+            }
+
+            clusteredStore.save(new Data(1, "saved name", "description"));
+            Assert.assertEquals("saved name", clusteredStore.read(1).getName());
+        } finally {
+            clusteredStore.close();
+        }
+    }
+
+    @Test
+    public void testReadCache() throws JSONException {
+        SQLStore<Data> cachedStore = (SQLStore) DataManager
+                .config("cachedStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withReadCacheSize(2)
+                .store(Data.class);
+        cachedStore.openSync();
+
+        cachedStore.save(new Data(1, "name 1", "description 1"));
+        cachedStore.save(new Data(2, "name 2", "description 2"));
+        cachedStore.save(new Data(3, "name 3", "description 3"));
+
+        Data first = cachedStore.read(1);
+        first.setName("not saved");
+        Data second = cachedStore.read(1);
+        Assert.assertNotSame("reads return their own instance", first, second);
+        Assert.assertEquals("name 1", second.getName());
+        Assert.assertEquals(1, cachedStore.getReadCacheHits());
+        Assert.assertEquals(1, cachedStore.getReadCacheMisses());
+
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"id\":1}"));
+        Assert.assertEquals("name 1", cachedStore.readWithFilter(filter).get(0).getName());
+
+        cachedStore.read(2);
+        cachedStore.read(3);
+        cachedStore.read(1);
+        Assert.assertEquals("the least recently used item is evicted", 4, cachedStore.getReadCacheMisses());
+
+        cachedStore.save(new Data(1, "new name", "description 1"));
+        Assert.assertEquals("new name", cachedStore.read(1).getName());
+
+        cachedStore.remove(1);
+        Assert.assertNull(cachedStore.read(1));
+
+        cachedStore.read(3);
+        long hits = cachedStore.getReadCacheHits();
+        cachedStore.reset();
+        Assert.assertNull(cachedStore.read(3));
+        Assert.assertEquals(hits, cachedStore.getReadCacheHits());
+
+        Assert.assertEquals(0, store.getReadCacheHits() + store.getReadCacheMisses());
+        cachedStore.close();
+    }
+
+    @Test
+    public void testMetrics() throws JSONException {
+        StoreMetrics metrics = new StoreMetrics();
+        SQLStore<Data> measuredStore = (SQLStore) DataManager
+                .config("measuredStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withReadCacheSize(10)
+                .withMetrics(metrics)
+                .store(Data.class);
+        measuredStore.openSync();
+
+        measuredStore.save(new Data(1, "name", "description"));
+        StoreMetrics.Snapshot snapshot = metrics.snapshot();
+        Assert.assertEquals(1, snapshot.getLatency(StoreMetrics.Operation.SAVE).getCount());
+        Assert.assertEquals(4, snapshot.getRowsWritten());
+        Assert.assertEquals("1".length() + "name".length() + "description".length() + "false".length(),
+                snapshot.getBytesWritten());
+
+        measuredStore.save(new Data(1, "other", "description"));
+        Assert.assertEquals("only the changed property is written", 5, metrics.snapshot().getRowsWritten());
+
+        List<Data> items = new ArrayList<Data>();
+        for (int i = 2; i <= 10; i++) {
+            items.add(new Data(i, "name " + i, "description " + i));
+        }
+        measuredStore.save(items);
+        Assert.assertEquals(1, metrics.snapshot().getLatency(StoreMetrics.Operation.BULK_SAVE).getCount());
+        Assert.assertEquals(41, metrics.snapshot().getRowsWritten());
+
+        measuredStore.read(1);
+        measuredStore.read(1);
+        measuredStore.readAll();
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"name\":\"name 2\"}"));
+        measuredStore.readWithFilter(filter);
+        measuredStore.remove(1);
+
+        snapshot = metrics.snapshot();
+        Assert.assertEquals(2, snapshot.getLatency(StoreMetrics.Operation.READ).getCount());
+        Assert.assertEquals(1, snapshot.getCacheHits());
+        Assert.assertEquals(1, snapshot.getCacheMisses());
+        Assert.assertEquals(0.5, snapshot.getCacheHitRate(), 0);
+        Assert.assertEquals(1, snapshot.getLatency(StoreMetrics.Operation.READ_ALL).getCount());
+        Assert.assertEquals(1, snapshot.getLatency(StoreMetrics.Operation.READ_WITH_FILTER).getCount());
+        Assert.assertEquals(1, snapshot.getLatency(StoreMetrics.Operation.REMOVE).getCount());
+        Assert.assertEquals("the cache hit is not read from the database", 1 + 10 + 1, snapshot.getEntitiesRead());
+
+        StoreMetrics.Latency latency = snapshot.getLatency(StoreMetrics.Operation.READ_ALL);
+        Assert.assertTrue(latency.getTotalNanos() > 0);
+        Assert.assertEquals(latency.getMaxNanos(), latency.getPercentileNanos(100));
+
+        metrics.reset();
+        Assert.assertEquals(0, metrics.snapshot().getLatency(StoreMetrics.Operation.SAVE).getCount());
+        Assert.assertEquals(0, metrics.snapshot().getRowsWritten());
+        measuredStore.close();
+    }
+
+    @Test
+    public void testSlowQueryLog() throws JSONException {
+        SlowQueryLog log = new SlowQueryLog(0, 3);
+        SQLStore<Data> loggedStore = (SQLStore) DataManager
+                .config("loggedStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withSlowQueryLog(log)
+                .store(Data.class);
+        loggedStore.openSync();
+
+        loggedStore.save(new Data(1, "name 1", "description 1"));
+        loggedStore.save(new Data(2, "name 2", "description 2"));
+        Assert.assertTrue("writes are not logged", log.getEntries().isEmpty());
+
+        ReadFilter filter = new ReadFilter();
+        filter.setWhere(new JSONObject("{\"name\":\"name 2\"}"));
+        Assert.assertEquals(1, loggedStore.readWithFilter(filter).size());
+
+        List<SlowQueryLog.Entry> entries = log.getEntries();
+        Assert.assertEquals(1, entries.size());
+        SlowQueryLog.Entry entry = entries.get(0);
+        Assert.assertTrue(entry.getSql(), entry.getSql().contains("Data_property"));
+        Assert.assertEquals(Collections.singletonList("text[6]"), entry.getArgumentShapes());
+        Assert.assertTrue(entry.getPlan().toString(), entry.getPlan().toString().toUpperCase().contains("USING INDEX"));
+        Assert.assertFalse("the arguments are not kept", log.dump().contains("name 2"));
+
+        loggedStore.read(1);
+        loggedStore.readAll();
+        loggedStore.exists(2);
+        entries = log.getEntries();
+        Assert.assertEquals("the oldest entries are dropped", 3, entries.size());
+        Assert.assertNotSame(entry, entries.get(0));
+        Assert.assertEquals(Collections.singletonList("text[1]"), entries.get(0).getArgumentShapes());
+
+        log.clear();
+        Assert.assertEquals("", log.dump());
+        loggedStore.close();
+
+        SlowQueryLog quietLog = new SlowQueryLog(60000, 10);
+        Assert.assertEquals(60000, quietLog.getThresholdMillis());
+        SQLStore<Data> quietStore = (SQLStore) DataManager
+                .config("loggedStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withSlowQueryLog(quietLog)
+                .store(Data.class);
+        quietStore.openSync();
+        quietStore.readWithFilter(filter);
+        Assert.assertTrue(quietLog.getEntries().isEmpty());
+        quietStore.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSlowQueryLogWithoutCapacity() {
+        new SlowQueryLog(10, 0);
+    }
+
+    @Test
+    public void testChangeListener() {
+        final List<StoreChange> changes = new ArrayList<StoreChange>();
+        OnStoreChangedListener listener = new OnStoreChangedListener() {
+            @Override
+            public void onStoreChanged(Store<?> changedStore, StoreChange change) {
+                Assert.assertSame(store, changedStore);
+                changes.add(change);
+            }
+        };
+        store.addOnChangeListener(listener);
+
+        List<Data> items = new ArrayList<Data>();
+        for (int i = 1; i <= 50; i++) {
+            items.add(new Data(i, "name " + i, "description " + i));
+        }
+        store.save(items);
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(50, changes.get(0).getInserted().size());
+        Assert.assertTrue(changes.get(0).getUpdated().isEmpty());
+
+        store.save(new Data(1, "name 1", "description 1"));
+        Assert.assertEquals("an unchanged save is not reported", 1, changes.size());
+
+        store.save(new Data(1, "new name", "description 1"));
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(Collections.<Object>singleton(1), changes.get(1).getUpdated());
+
+        store.remove(2);
+        store.remove(2);
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals(Collections.<Object>singleton(2), changes.get(2).getRemoved());
+
+        store.reset();
+        Assert.assertEquals(4, changes.size());
+        Set<Serializable> remaining = new HashSet<Serializable>();
+        for (int i = 1; i <= 50; i++) {
+            if (i != 2) {
+                remaining.add(i);
+            }
+        }
+        Assert.assertEquals("ids are reported with the type they were saved with", remaining,
+                changes.get(3).getRemoved());
+
+        store.removeOnChangeListener(listener);
+        store.save(new Data(1, "name", "description"));
+        Assert.assertEquals(4, changes.size());
+    }
+
+    @Test
+    public void testReadsDuringBulkSaveWithWriteAheadLogging() throws InterruptedException {
+        final SQLStore<Data> walStore = (SQLStore) DataManager
+                .config("walStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withWriteAheadLogging(true)
+                .withWalAutoCheckpoint(1000)
+                .store(Data.class);
+        walStore.save(new Data(0, "name", "description"));
+
+        final List<Data> items = new ArrayList<Data>();
+        for (int i = 1; i <= 10000; i++) {
+            items.add(new Data(i, "name " + i, "description " + i));
+        }
+        final CountDownLatch saved = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    walStore.save(items);
+                } catch (Throwable t) {
+                    failure.set(t);
+                } finally {
+                    saved.countDown();
+                }
+            }
+        });
+
+        try {
+            writer.start();
+            int reads = 0;
+            long maxLatency = 0;
+            while (!saved.await(0, TimeUnit.MILLISECONDS)) {
+                long start = System.nanoTime();
+                Assert.assertEquals("name", walStore.read(0).getName());
+                maxLatency = Math.max(maxLatency, System.nanoTime() - start);
+                reads++;
+            }
+            writer.join();
+            Log.i(SQLStoreTest.class.getSimpleName(), "Reads during a 10000 items save: " + reads
+                    + ", max latency: " + TimeUnit.NANOSECONDS.toMillis(maxLatency) + " ms");
+
+            Assert.assertNull(failure.get());
+            Assert.assertTrue(reads > 0);
+            Assert.assertEquals("name 10000", walStore.read(10000).getName());
+        } finally {
+            walStore.close();
+        }
+    }
+
+    @Test
+    public void testTuningPragmas() {
+        SQLStore<Data> tunedStore = (SQLStore) DataManager
+                .config("tunedStore", SQLStoreConfiguration.class)
+                .withContext(context)
+                .withPageSize(8192)
+                .withCacheSize(-4096)
+                .withSynchronous(SynchronousMode.OFF)
+                .withTempStoreInMemory(true)
+                .store(Data.class);
+        try {
+            tunedStore.save(new Data(10, "name", "description"));
+            Assert.assertEquals("name", tunedStore.read(10).getName());
+
+            SQLiteDatabase database = tunedStore.getWritableDatabase();
+            Assert.assertEquals(8192, queryPragma(database, "page_size"));
+            Assert.assertEquals(-4096, queryPragma(database, "cache_size"));
+            Assert.assertEquals(0, queryPragma(database, "synchronous"));
+            Assert.assertEquals(2, queryPragma(database, "temp_store"));
+        } finally {
+            tunedStore.close();
+        }
+    }
+
+    @Test
+    public void testInvalidPageSize() {
+        SQLStoreConfiguration config = DataManager.config("invalidPageSize", SQLStoreConfiguration.class);
+        for (int bytes : new int[]{1000, 256, 131072, 0}) {
+            try {
+                config.withPageSize(bytes);
+                Assert.fail(bytes + " should be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    static long queryPragma(SQLiteDatabase database, String pragma) {
+        Cursor cursor = database.rawQuery("pragma " + pragma, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Test
     public void testSaveCollection() {
         List<Data> items = new ArrayList<Data>();
@@ -464,6 +1378,30 @@ public class SQLStoreTest {
 
     }
 
+    public static final class TrivialDeeplyNestedClass {
+
+        @RecordId
+        private Integer id;
+        private TrivialNestedClass nested;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public TrivialNestedClass getNested() {
+            return nested;
+        }
+
+        public void setNested(TrivialNestedClass nested) {
+            this.nested = nested;
+        }
+
+    }
+
     public static final class TrivialNestedClassWithCollection {
 
         @RecordId
@@ -517,4 +1455,22 @@ public class SQLStoreTest {
         }
 
     }
+
+    public static final class StringIdData {
+
+        @RecordId
+        private String id;
+
+        public String name;
+        public boolean enable;
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+    }
 }
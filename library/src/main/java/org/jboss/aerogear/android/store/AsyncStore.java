@@ -0,0 +1,355 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.store.util.StoreExecutors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs the operations of a {@link Store} off the calling thread.
+ *
+ * Writes run one at a time, in submission order, on a thread of their own.
+ * Reads run on a pool shared by all the stores, once the writes submitted
+ * before them are done, so they see those writes. Every operation returns a
+ * {@link Future} and, when given a {@link Callback}, calls it on the main
+ * thread.
+ *
+ * @param <T> the type of the stored items
+ */
+public class AsyncStore<T> {
+
+    private final Store<T> store;
+    private final Executor writer;
+    private PendingWrite lastWrite;
+
+    public AsyncStore(Store<T> store) {
+        this.store = store;
+        this.writer = StoreExecutors.newSerialExecutor(AsyncStore.class.getSimpleName());
+    }
+
+    /**
+     * Returns the wrapped store, for synchronous use.
+     *
+     * @return the wrapped store
+     */
+    public Store<T> getStore() {
+        return store;
+    }
+
+    /**
+     * Reads all the items, see {@link Store#readAll()}.
+     *
+     * @param callback called with a copy of the items, may be null
+     * @return the future items
+     */
+    public Future<Collection<T>> readAllAsync(Callback<Collection<T>> callback) {
+        return read(new Callable<Collection<T>>() {
+            @Override
+            public Collection<T> call() {
+                return new ArrayList<T>(store.readAll());
+            }
+        }, callback);
+    }
+
+    /**
+     * Reads an item, see {@link Store#read(Serializable)}.
+     *
+     * @param id the id of the item
+     * @param callback called with the item, or null if it does not exist, may
+     * be null
+     * @return the future item
+     */
+    public Future<T> readAsync(final Serializable id, Callback<T> callback) {
+        return read(new Callable<T>() {
+            @Override
+            public T call() {
+                return store.read(id);
+            }
+        }, callback);
+    }
+
+    /**
+     * Reads the items matching a filter, see
+     * {@link Store#readWithFilter(ReadFilter)}.
+     *
+     * @param filter the filter
+     * @param callback called with the matching items, may be null
+     * @return the future matching items
+     */
+    public Future<List<T>> readWithFilterAsync(final ReadFilter filter, Callback<List<T>> callback) {
+        return read(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return store.readWithFilter(filter);
+            }
+        }, callback);
+    }
+
+    /**
+     * Checks if the store is empty, see {@link Store#isEmpty()}.
+     *
+     * @param callback called with true if the store is empty, may be null
+     * @return the future check
+     */
+    public Future<Boolean> isEmptyAsync(Callback<Boolean> callback) {
+        return read(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return store.isEmpty();
+            }
+        }, callback);
+    }
+
+    /**
+     * Counts the items matching a filter, see
+     * {@link Store#count(ReadFilter)}.
+     *
+     * @param filter the filter, null to count all the items
+     * @param callback called with the number of items, may be null
+     * @return the future count
+     */
+    public Future<Long> countAsync(final ReadFilter filter, Callback<Long> callback) {
+        return read(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return filter == null ? store.count() : store.count(filter);
+            }
+        }, callback);
+    }
+
+    /**
+     * Checks if an item is stored, see {@link Store#exists(Serializable)}.
+     *
+     * @param id the id of the item
+     * @param callback called with true if the item is stored, may be null
+     * @return the future check
+     */
+    public Future<Boolean> existsAsync(final Serializable id, Callback<Boolean> callback) {
+        return read(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return store.exists(id);
+            }
+        }, callback);
+    }
+
+    /**
+     * Saves an item, see {@link Store#save(Object)}.
+     *
+     * @param item the item
+     * @param callback called with the saved item, its id set, may be null
+     * @return the future saved item
+     */
+    public Future<T> saveAsync(final T item, Callback<T> callback) {
+        return write(new Callable<T>() {
+            @Override
+            public T call() {
+                store.save(item);
+                return item;
+            }
+        }, callback);
+    }
+
+    /**
+     * Saves items, see {@link Store#save(Collection)}.
+     *
+     * @param items the items
+     * @param callback called with the saved items, their ids set, may be null
+     * @return the future saved items
+     */
+    public Future<Collection<T>> saveAsync(final Collection<T> items, Callback<Collection<T>> callback) {
+        return write(new Callable<Collection<T>>() {
+            @Override
+            public Collection<T> call() {
+                store.save(items);
+                return items;
+            }
+        }, callback);
+    }
+
+    /**
+     * Removes an item, see {@link Store#remove(Serializable)}.
+     *
+     * @param id the id of the item
+     * @param callback called once the item is removed, may be null
+     * @return the future removal
+     */
+    public Future<Void> removeAsync(final Serializable id, Callback<Void> callback) {
+        return write(new Callable<Void>() {
+            @Override
+            public Void call() {
+                store.remove(id);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Removes items, see {@link Store#remove(Collection)}.
+     *
+     * @param ids the ids of the items
+     * @param callback called once the items are removed, may be null
+     * @return the future removal
+     */
+    public Future<Void> removeAsync(final Collection<? extends Serializable> ids, Callback<Void> callback) {
+        return write(new Callable<Void>() {
+            @Override
+            public Void call() {
+                store.remove(ids);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Removes the items matching a filter, see
+     * {@link Store#removeWithFilter(ReadFilter)}.
+     *
+     * @param filter the filter matching the items
+     * @param callback called once the items are removed, may be null
+     * @return the future removal
+     */
+    public Future<Void> removeWithFilterAsync(final ReadFilter filter, Callback<Void> callback) {
+        return write(new Callable<Void>() {
+            @Override
+            public Void call() {
+                store.removeWithFilter(filter);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Removes all the items, see {@link Store#reset()}.
+     *
+     * @param callback called once the store is empty, may be null
+     * @return the future reset
+     */
+    public Future<Void> resetAsync(Callback<Void> callback) {
+        return write(new Callable<Void>() {
+            @Override
+            public Void call() {
+                store.reset();
+                return null;
+            }
+        }, callback);
+    }
+
+    private synchronized <R> Future<R> write(Callable<R> task, Callback<R> callback) {
+        final FutureTask<R> future = newTask(task, callback);
+        final PendingWrite write = new PendingWrite();
+        // run() returns once the task is over, even if it is cancelled
+        // meanwhile, and right away if it was cancelled before starting
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.run();
+                } finally {
+                    release(write);
+                }
+            }
+        });
+        lastWrite = write;
+        return future;
+    }
+
+    /**
+     * Submits the reads which were waiting for a write. Writes end in
+     * submission order, so the writes before it are over too.
+     */
+    private void release(PendingWrite write) {
+        List<Runnable> reads;
+        synchronized (this) {
+            write.done = true;
+            reads = write.reads;
+        }
+        for (Runnable read : reads) {
+            StoreExecutors.readers().execute(read);
+        }
+    }
+
+    /**
+     * Submits a read to the reader pool, or keeps it until the last write
+     * submitted before it is over, so no pool thread waits for the writer.
+     */
+    private <R> Future<R> read(Callable<R> task, Callback<R> callback) {
+        FutureTask<R> future = newTask(task, callback);
+        synchronized (this) {
+            if (lastWrite != null && !lastWrite.done) {
+                lastWrite.reads.add(future);
+                return future;
+            }
+        }
+        StoreExecutors.readers().execute(future);
+        return future;
+    }
+
+    private static <R> FutureTask<R> newTask(Callable<R> task, final Callback<R> callback) {
+        return new FutureTask<R>(task) {
+            @Override
+            protected void done() {
+                if (callback != null && !isCancelled()) {
+                    deliver(this, callback);
+                }
+            }
+        };
+    }
+
+    private static <R> void deliver(Future<R> future, final Callback<R> callback) {
+        Runnable delivery;
+        try {
+            final R result = future.get();
+            delivery = new Runnable() {
+                @Override
+                public void run() {
+                    callback.onSuccess(result);
+                }
+            };
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            final Exception exception = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+            delivery = new Runnable() {
+                @Override
+                public void run() {
+                    callback.onFailure(exception);
+                }
+            };
+        }
+        StoreExecutors.mainThread().execute(delivery);
+    }
+
+    /**
+     * A submitted write and the reads waiting for it, guarded by the store.
+     */
+    private static final class PendingWrite {
+        private boolean done;
+        private final List<Runnable> reads = new ArrayList<Runnable>();
+    }
+
+}
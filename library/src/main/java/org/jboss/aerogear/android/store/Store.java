@@ -76,6 +76,22 @@ public interface Store<T> {
      */
     public void remove(Serializable id);
 
+    /**
+     * Removes the objects/records with the given ids from the underlying
+     * storage system, in a single operation.
+     *
+     * @param ids Ids of the items to remove
+     */
+    public void remove(Collection<? extends Serializable> ids);
+
+    /**
+     * Removes the objects/records which {@link #readWithFilter(ReadFilter)}
+     * would return for the same filter, in a single operation.
+     *
+     * @param filter a filter matching the items to remove
+     */
+    public void removeWithFilter(ReadFilter filter);
+
     /**
      * Checks if the storage system contains no stored elements.
      * 
@@ -83,4 +99,44 @@ public interface Store<T> {
      */
     public boolean isEmpty();
 
+    /**
+     * Counts the objects/records of the underlying storage system, without
+     * reading them.
+     *
+     * @return the number of stored elements
+     */
+    public long count();
+
+    /**
+     * Counts the objects/records which {@link #readWithFilter(ReadFilter)}
+     * would return for the same filter, without reading them.
+     *
+     * @param filter a filter matching the items to count
+     * @return the number of matching elements
+     */
+    public long count(ReadFilter filter);
+
+    /**
+     * Checks if a specific object/record is stored, without reading it.
+     *
+     * @param id id from the object
+     * @return true if an element with this id is stored, otherwise false.
+     */
+    public boolean exists(Serializable id);
+
+    /**
+     * Registers a listener called, on the thread making the change, after each
+     * committed save, remove or reset which changed the store.
+     *
+     * @param listener the listener to add
+     */
+    public void addOnChangeListener(OnStoreChangedListener listener);
+
+    /**
+     * Unregisters a change listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeOnChangeListener(OnStoreChangedListener listener);
+
 }
@@ -0,0 +1,107 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The ids of the items inserted, updated and removed by one committed
+ * operation of a store. All the items of a save(Collection) are reported in
+ * a single change.
+ *
+ * The ids are the ones of the saved items or given to remove, except for
+ * the ids removed by a reset of a SQL store, which are read back from the
+ * database as strings.
+ */
+public final class StoreChange {
+
+    private final Set<Serializable> inserted;
+    private final Set<Serializable> updated;
+    private final Set<Serializable> removed;
+
+    private StoreChange(Builder builder) {
+        this.inserted = Collections.unmodifiableSet(builder.inserted);
+        this.updated = Collections.unmodifiableSet(builder.updated);
+        this.removed = Collections.unmodifiableSet(builder.removed);
+    }
+
+    public Set<Serializable> getInserted() {
+        return inserted;
+    }
+
+    public Set<Serializable> getUpdated() {
+        return updated;
+    }
+
+    public Set<Serializable> getRemoved() {
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return "StoreChange{inserted=" + inserted + ", updated=" + updated + ", removed=" + removed + '}';
+    }
+
+    /**
+     * Collects the changes of an operation, an id ending up in a single set:
+     * an item inserted then updated is reported as inserted, an item removed
+     * then saved again as updated.
+     */
+    public static final class Builder {
+
+        private final Set<Serializable> inserted = new LinkedHashSet<Serializable>();
+        private final Set<Serializable> updated = new LinkedHashSet<Serializable>();
+        private final Set<Serializable> removed = new LinkedHashSet<Serializable>();
+
+        public Builder inserted(Serializable id) {
+            if (removed.remove(id)) {
+                updated.add(id);
+            } else if (!updated.contains(id)) {
+                inserted.add(id);
+            }
+            return this;
+        }
+
+        public Builder updated(Serializable id) {
+            if (!inserted.contains(id)) {
+                updated.add(id);
+            }
+            return this;
+        }
+
+        public Builder removed(Serializable id) {
+            updated.remove(id);
+            if (!inserted.remove(id)) {
+                removed.add(id);
+            }
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return inserted.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
+
+        public StoreChange build() {
+            return new StoreChange(this);
+        }
+
+    }
+
+}
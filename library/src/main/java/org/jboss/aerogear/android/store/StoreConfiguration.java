@@ -26,6 +26,7 @@ public abstract class StoreConfiguration<CONFIGURATION extends StoreConfiguratio
 
     private String name;
     private Collection<OnStoreCreatedListener> listeners;
+    private StoreMetrics metrics = StoreMetrics.disabled();
 
     public StoreConfiguration() {
         listeners = new HashSet<OnStoreCreatedListener>();
@@ -56,6 +57,26 @@ public abstract class StoreConfiguration<CONFIGURATION extends StoreConfiguratio
         return (CONFIGURATION) this;
     }
 
+    public StoreMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records the latencies and the volumes of the operations of the stores
+     * built by this configuration. Metrics are disabled by default.
+     *
+     * @param metrics the metrics to record into, may be shared by several
+     * stores
+     * @return the current configuration
+     */
+    public CONFIGURATION withMetrics(StoreMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics may not be null");
+        }
+        this.metrics = metrics;
+        return (CONFIGURATION) this;
+    }
+
     public final <TYPE> Store<TYPE> store(Class<TYPE> klass) {
         Store<TYPE> store = buildStore(klass);
         for (OnStoreCreatedListener listener : getOnStoreCreatedListeners()) {
@@ -0,0 +1,379 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects timing and volume metrics of the stores it is registered with,
+ * see {@link StoreConfiguration#withMetrics(StoreMetrics)}. A single instance
+ * can be shared by several stores to aggregate them.
+ *
+ * The latencies of the operations which completed are kept in histograms of
+ * power of two buckets, from 1 microsecond to about a minute, so recording
+ * takes a few atomic increments and no allocation. Percentiles are read as
+ * the upper bound of their bucket, within a factor of two of the exact value.
+ *
+ * The recording methods are called by the store implementations, an
+ * application only reads {@link #snapshot()}.
+ */
+public final class StoreMetrics {
+
+    /**
+     * The timed operations.
+     */
+    public enum Operation {
+        SAVE,
+        BULK_SAVE,
+        READ,
+        READ_ALL,
+        READ_WITH_FILTER,
+        REMOVE
+    }
+
+    private static final StoreMetrics DISABLED = new StoreMetrics(false);
+    private static final int BUCKETS = 27;
+
+    private final boolean enabled;
+    private final Map<Operation, Histogram> latencies = new EnumMap<Operation, Histogram>(Operation.class);
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong entitiesRead = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    public StoreMetrics() {
+        this(true);
+    }
+
+    private StoreMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new Histogram());
+        }
+    }
+
+    /**
+     * Returns the metrics of the stores without registered metrics, which
+     * record nothing.
+     *
+     * @return the disabled metrics
+     */
+    public static StoreMetrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @return the start time to pass to {@link #stop(Operation, long)}
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the latency of a completed operation.
+     *
+     * @param operation the operation
+     * @param start the value returned by {@link #start()}
+     */
+    public void stop(Operation operation, long start) {
+        if (enabled) {
+            latencies.get(operation).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records rows written to a database, or items written to memory.
+     *
+     * @param rows the number of rows
+     * @param bytes the size of the written data
+     */
+    public void recordWrite(long rows, long bytes) {
+        if (enabled) {
+            rowsWritten.addAndGet(rows);
+            bytesWritten.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Records items converted from their stored form.
+     *
+     * @param entities the number of items
+     */
+    public void recordEntitiesRead(long entities) {
+        if (enabled) {
+            entitiesRead.addAndGet(entities);
+        }
+    }
+
+    public void recordCacheHit() {
+        if (enabled) {
+            cacheHits.incrementAndGet();
+        }
+    }
+
+    public void recordCacheMiss() {
+        if (enabled) {
+            cacheMisses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of bytes of a string encoded as UTF-8, without
+     * encoding it.
+     *
+     * @param value the string
+     * @return its UTF-8 length
+     */
+    public static long utf8Length(String value) {
+        long length = 0;
+        for (int index = 0; index < value.length(); index++) {
+            char c = value.charAt(index);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && index + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(index + 1))) {
+                length += 4;
+                index++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Copies the current metrics. Operations completing while the copy is
+     * made may be partially included.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Clears all the metrics.
+     */
+    public void reset() {
+        for (Histogram histogram : latencies.values()) {
+            histogram.reset();
+        }
+        rowsWritten.set(0);
+        bytesWritten.set(0);
+        entitiesRead.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+    }
+
+    private static final class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+            buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        void reset() {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                buckets.set(bucket, 0);
+            }
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+    }
+
+    /**
+     * The latencies of one operation.
+     */
+    public static final class Latency {
+
+        private final long[] buckets = new long[BUCKETS];
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Latency(Histogram histogram) {
+            long count = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                buckets[bucket] = histogram.buckets.get(bucket);
+                count += buckets[bucket];
+            }
+            this.count = count;
+            this.totalNanos = histogram.totalNanos.get();
+            this.maxNanos = histogram.maxNanos.get();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Returns the latency under which the given share of the operations
+         * completed, rounded up to the next power of two microseconds and
+         * capped by the maximum.
+         *
+         * @param percentile between 0 and 100, for instance 99
+         * @return the latency in nanoseconds, 0 if there was no operation
+         */
+        public long getPercentileNanos(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException(percentile + " isn't between 0 and 100");
+            }
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS && count > 0; bucket++) {
+                seen += buckets[bucket];
+                if (seen >= Math.max(rank, 1)) {
+                    return bucket == BUCKETS - 1 ? maxNanos : Math.min((1000L << bucket), maxNanos);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Latency{count=" + count + ", meanNanos=" + getMeanNanos()
+                    + ", p50Nanos=" + getPercentileNanos(50) + ", p99Nanos=" + getPercentileNanos(99)
+                    + ", maxNanos=" + maxNanos + '}';
+        }
+
+    }
+
+    /**
+     * A copy of the metrics at a point in time.
+     */
+    public static final class Snapshot {
+
+        private final Map<Operation, Latency> latencies = new EnumMap<Operation, Latency>(Operation.class);
+        private final long rowsWritten;
+        private final long bytesWritten;
+        private final long entitiesRead;
+        private final long cacheHits;
+        private final long cacheMisses;
+
+        private Snapshot(StoreMetrics metrics) {
+            for (Map.Entry<Operation, Histogram> latency : metrics.latencies.entrySet()) {
+                latencies.put(latency.getKey(), new Latency(latency.getValue()));
+            }
+            this.rowsWritten = metrics.rowsWritten.get();
+            this.bytesWritten = metrics.bytesWritten.get();
+            this.entitiesRead = metrics.entitiesRead.get();
+            this.cacheHits = metrics.cacheHits.get();
+            this.cacheMisses = metrics.cacheMisses.get();
+        }
+
+        public Latency getLatency(Operation operation) {
+            return latencies.get(operation);
+        }
+
+        /**
+         * Returns the rows written to the database, property rows for
+         * {@link org.jboss.aerogear.android.store.sql.SQLStore} and item rows
+         * for the other SQL stores, or the items written by the memory
+         * stores.
+         *
+         * @return the number of rows
+         */
+        public long getRowsWritten() {
+            return rowsWritten;
+        }
+
+        /**
+         * Returns the size of the written data: the UTF-8 length of the
+         * values or documents of the SQL stores, the length of the encrypted
+         * items of the encrypted stores, 0 for the memory store which does not
+         * convert the items.
+         *
+         * @return the number of bytes
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * Returns the number of items converted from their stored form by
+         * reads, items found in the read cache or kept as is in memory are
+         * not counted.
+         *
+         * @return the number of items
+         */
+        public long getEntitiesRead() {
+            return entitiesRead;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        /**
+         * Returns the share of the reads by id served by the read cache.
+         *
+         * @return between 0 and 1, 0 if there was no cached read
+         */
+        public double getCacheHitRate() {
+            long reads = cacheHits + cacheMisses;
+            return reads == 0 ? 0 : (double) cacheHits / reads;
+        }
+
+        @Override
+        public String toString() {
+            return "StoreMetrics.Snapshot{latencies=" + latencies + ", rowsWritten=" + rowsWritten
+                    + ", bytesWritten=" + bytesWritten + ", entitiesRead=" + entitiesRead
+                    + ", cacheHits=" + cacheHits + ", cacheMisses=" + cacheMisses + '}';
+        }
+
+    }
+
+}
@@ -22,8 +22,13 @@ import org.jboss.aerogear.android.core.ReadFilter;
 import org.jboss.aerogear.android.security.EncryptionService;
 import org.jboss.aerogear.android.security.InvalidKeyException;
 import org.jboss.aerogear.android.security.keystore.KeyStoreBasedEncryptionConfiguration;
+import org.jboss.aerogear.android.store.OnStoreChangedListener;
 import org.jboss.aerogear.android.store.Store;
+import org.jboss.aerogear.android.store.StoreChange;
+import org.jboss.aerogear.android.store.StoreMetrics;
+import org.jboss.aerogear.android.store.StoreMetrics.Operation;
 import org.jboss.aerogear.android.store.generator.IdGenerator;
+import org.jboss.aerogear.android.store.util.ChangeNotifier;
 import org.jboss.aerogear.android.store.util.CryptoEntityUtil;
 import org.jboss.aerogear.crypto.RandomUtils;
 
@@ -36,6 +41,8 @@ public class EncryptedMemoryStore<T> implements Store<T> {
 
     private final MemoryStore<byte[]> memoryStore;
     private final CryptoEntityUtil<T> cryptoEntityUtil;
+    private final ChangeNotifier changeNotifier = new ChangeNotifier();
+    private StoreMetrics metrics = StoreMetrics.disabled();
 
     public EncryptedMemoryStore(Context context, IdGenerator idGenerator, String password, Class<T> modelClass) {
 
@@ -60,6 +67,7 @@ public class EncryptedMemoryStore<T> implements Store<T> {
      */
     @Override
     public Collection<T> readAll() throws InvalidKeyException {
+        long start = metrics.start();
         ArrayList<T> dataList = new ArrayList<T>();
 
         Collection<byte[]> encryptedCollection = memoryStore.readAll();
@@ -68,6 +76,8 @@ public class EncryptedMemoryStore<T> implements Store<T> {
             dataList.add(decryptedData);
         }
 
+        metrics.recordEntitiesRead(dataList.size());
+        metrics.stop(Operation.READ_ALL, start);
         return dataList;
     }
 
@@ -76,12 +86,15 @@ public class EncryptedMemoryStore<T> implements Store<T> {
      */
     @Override
     public T read(Serializable id) throws InvalidKeyException {
+        long start = metrics.start();
         byte[] encryptedItem = memoryStore.read(id);
-        if (encryptedItem == null) {
-            return null;
-        } else {
-            return cryptoEntityUtil.decrypt(encryptedItem);
+        T item = null;
+        if (encryptedItem != null) {
+            item = cryptoEntityUtil.decrypt(encryptedItem);
+            metrics.recordEntitiesRead(1);
         }
+        metrics.stop(Operation.READ, start);
+        return item;
     }
 
     /**
@@ -97,8 +110,11 @@ public class EncryptedMemoryStore<T> implements Store<T> {
      */
     @Override
     public void save(T item) {
-        Serializable idValue = memoryStore.getOrGenerateIdValue(item);
-        memoryStore.save(idValue, cryptoEntityUtil.encrypt(item));
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        metrics.recordWrite(1, saveItem(item, changes));
+        metrics.stop(Operation.SAVE, start);
+        changeNotifier.publish(this, changes);
     }
 
     /**
@@ -106,9 +122,27 @@ public class EncryptedMemoryStore<T> implements Store<T> {
      */
     @Override
     public void save(Collection<T> items) {
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        long bytes = 0;
         for (T item : items) {
-            save(item);
+            bytes += saveItem(item, changes);
         }
+        metrics.recordWrite(items.size(), bytes);
+        metrics.stop(Operation.BULK_SAVE, start);
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * Encrypts and stores an item.
+     *
+     * @return the length of the encrypted item
+     */
+    private int saveItem(T item, StoreChange.Builder changes) {
+        Serializable idValue = memoryStore.getOrGenerateIdValue(item);
+        byte[] encrypted = cryptoEntityUtil.encrypt(item);
+        memoryStore.save(idValue, encrypted, changes);
+        return encrypted.length;
     }
 
     /**
@@ -116,7 +150,9 @@ public class EncryptedMemoryStore<T> implements Store<T> {
      */
     @Override
     public void reset() {
-        memoryStore.reset();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        memoryStore.reset(changes);
+        changeNotifier.publish(this, changes);
     }
 
     /**
@@ -124,7 +160,31 @@ public class EncryptedMemoryStore<T> implements Store<T> {
      */
     @Override
     public void remove(Serializable id) {
-        memoryStore.remove(id);
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        memoryStore.remove(id, changes);
+        metrics.stop(Operation.REMOVE, start);
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(Collection<? extends Serializable> ids) {
+        StoreChange.Builder changes = new StoreChange.Builder();
+        for (Serializable id : ids) {
+            memoryStore.remove(id, changes);
+        }
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeWithFilter(ReadFilter filter) {
+        throw new UnsupportedOperationException();
     }
 
     /**
@@ -135,4 +195,48 @@ public class EncryptedMemoryStore<T> implements Store<T> {
         return memoryStore.isEmpty();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count() {
+        return memoryStore.count();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count(ReadFilter filter) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(Serializable id) {
+        return memoryStore.exists(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addOnChangeListener(OnStoreChangedListener listener) {
+        changeNotifier.addListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeOnChangeListener(OnStoreChangedListener listener) {
+        changeNotifier.removeListener(listener);
+    }
+
+    void setMetrics(StoreMetrics metrics) {
+        this.metrics = metrics;
+    }
+
 }
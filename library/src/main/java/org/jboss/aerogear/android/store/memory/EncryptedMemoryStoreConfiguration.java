@@ -53,7 +53,9 @@ public final class EncryptedMemoryStoreConfiguration extends StoreConfiguration<
             throw new IllegalStateException("Context, Klass and Passphrase are mandatory");
         }
 
-        return new EncryptedMemoryStore<>(context, idGenerator, password, klass);
+        EncryptedMemoryStore<TYPE> store = new EncryptedMemoryStore<>(context, idGenerator, password, klass);
+        store.setMetrics(getMetrics());
+        return store;
     }
 
 }
@@ -18,26 +18,34 @@ package org.jboss.aerogear.android.store.memory;
 
 import org.jboss.aerogear.android.core.ReadFilter;
 import org.jboss.aerogear.android.core.reflection.Property;
-import org.jboss.aerogear.android.core.reflection.Scan;
+import org.jboss.aerogear.android.store.OnStoreChangedListener;
 import org.jboss.aerogear.android.store.Store;
+import org.jboss.aerogear.android.store.StoreChange;
+import org.jboss.aerogear.android.store.StoreMetrics;
+import org.jboss.aerogear.android.store.StoreMetrics.Operation;
 import org.jboss.aerogear.android.store.generator.IdGenerator;
+import org.jboss.aerogear.android.store.util.ChangeNotifier;
+import org.jboss.aerogear.android.store.util.ClassMetadata;
 import org.json.JSONObject;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Memory implementation of Store {@link Store}.
  */
 public class MemoryStore<T> implements Store<T> {
 
-    private final Map<Serializable, T> data = new HashMap<Serializable, T>();
+    // ConcurrentHashMap rejects null keys, null ids are checked before lookups
+    private final Map<Serializable, T> data = new ConcurrentHashMap<Serializable, T>();
     private final IdGenerator idGenerator;
+    private final ChangeNotifier changeNotifier = new ChangeNotifier();
+    private StoreMetrics metrics = StoreMetrics.disabled();
 
     public MemoryStore(IdGenerator idGenerator) {
         this.idGenerator = idGenerator;
@@ -48,7 +56,10 @@ public class MemoryStore<T> implements Store<T> {
      */
     @Override
     public Collection<T> readAll() {
-        return data.values();
+        long start = metrics.start();
+        Collection<T> items = data.values();
+        metrics.stop(Operation.READ_ALL, start);
+        return items;
     }
 
     /**
@@ -56,7 +67,10 @@ public class MemoryStore<T> implements Store<T> {
      */
     @Override
     public T read(Serializable id) {
-        return data.get(id);
+        long start = metrics.start();
+        T item = id == null ? null : data.get(id);
+        metrics.stop(Operation.READ, start);
+        return item;
     }
 
     /*
@@ -64,8 +78,12 @@ public class MemoryStore<T> implements Store<T> {
      */
     @Override
     public void save(T item) {
-        Serializable idValue = getOrGenerateIdValue(item);
-        save(idValue, item);
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        save(getOrGenerateIdValue(item), item, changes);
+        metrics.recordWrite(1, 0);
+        metrics.stop(Operation.SAVE, start);
+        changeNotifier.publish(this, changes);
     }
 
     /*
@@ -73,44 +91,88 @@ public class MemoryStore<T> implements Store<T> {
      */
     @Override
     public void save(Collection<T> items) {
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
         for (T item : items) {
-            save(item);
+            save(getOrGenerateIdValue(item), item, changes);
         }
+        metrics.recordWrite(items.size(), 0);
+        metrics.stop(Operation.BULK_SAVE, start);
+        changeNotifier.publish(this, changes);
     }
 
-    void save(Serializable id, T item) {
-        data.put(id, item);
+    void save(Serializable id, T item, StoreChange.Builder changes) {
+        if (data.put(id, item) == null) {
+            changes.inserted(id);
+        } else {
+            changes.updated(id);
+        }
     }
 
     Serializable getOrGenerateIdValue(Object data) {
-        String recordIdFieldName = Scan.recordIdFieldNameIn(data.getClass());
-
-        Property property = new Property(data.getClass(), recordIdFieldName);
+        return ClassMetadata.of(data.getClass()).getOrGenerateId(data, idGenerator);
+    }
 
-        Serializable idValue = (Serializable) property.getValue(data);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        StoreChange.Builder changes = new StoreChange.Builder();
+        reset(changes);
+        changeNotifier.publish(this, changes);
+    }
 
-        if (idValue == null) {
-            idValue = idGenerator.generate();
-            property.setValue(data, idValue);
+    void reset(StoreChange.Builder changes) {
+        for (Serializable id : data.keySet()) {
+            if (data.remove(id) != null) {
+                changes.removed(id);
+            }
         }
+    }
 
-        return idValue;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(Serializable id) {
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        remove(id, changes);
+        metrics.stop(Operation.REMOVE, start);
+        changeNotifier.publish(this, changes);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void reset() {
-        data.clear();
+    public void remove(Collection<? extends Serializable> ids) {
+        StoreChange.Builder changes = new StoreChange.Builder();
+        for (Serializable id : ids) {
+            remove(id, changes);
+        }
+        changeNotifier.publish(this, changes);
     }
 
     /**
      * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if filter.query has nested objects
      */
     @Override
-    public void remove(Serializable id) {
-        data.remove(id);
+    public void removeWithFilter(ReadFilter filter) {
+        StoreChange.Builder changes = new StoreChange.Builder();
+        for (T item : select(filter)) {
+            remove(getOrGenerateIdValue(item), changes);
+        }
+        changeNotifier.publish(this, changes);
+    }
+
+    void remove(Serializable id, StoreChange.Builder changes) {
+        if (id != null && data.remove(id) != null) {
+            changes.removed(id);
+        }
     }
 
     /**
@@ -121,6 +183,52 @@ public class MemoryStore<T> implements Store<T> {
         return data.isEmpty();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count() {
+        return data.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if filter.query has nested objects
+     */
+    @Override
+    public long count(ReadFilter filter) {
+        return select(filter).size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(Serializable id) {
+        return id != null && data.containsKey(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addOnChangeListener(OnStoreChangedListener listener) {
+        changeNotifier.addListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeOnChangeListener(OnStoreChangedListener listener) {
+        changeNotifier.removeListener(listener);
+    }
+
+    void setMetrics(StoreMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -128,6 +236,13 @@ public class MemoryStore<T> implements Store<T> {
      */
     @Override
     public List<T> readWithFilter(ReadFilter filter) {
+        long start = metrics.start();
+        List<T> results = select(filter);
+        metrics.stop(Operation.READ_WITH_FILTER, start);
+        return results;
+    }
+
+    private List<T> select(ReadFilter filter) {
         if (filter == null) {
             filter = new ReadFilter();
         }
@@ -163,7 +278,7 @@ public class MemoryStore<T> implements Store<T> {
             filterValue = where.opt(filterPropertyName);
 
             for (T objectInStorage : data) {
-                Property objectProperty = new Property(objectInStorage.getClass(), filterPropertyName);
+                Property objectProperty = ClassMetadata.of(objectInStorage.getClass()).getProperty(filterPropertyName);
                 Object propertyValue = objectProperty.getValue(objectInStorage);
                 if (propertyValue != null && filterValue != null) {
                     if (!propertyValue.equals(filterValue)) {
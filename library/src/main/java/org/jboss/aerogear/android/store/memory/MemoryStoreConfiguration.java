@@ -34,7 +34,9 @@ public final class MemoryStoreConfiguration extends StoreConfiguration<MemorySto
 
     @Override
     protected <TYPE> Store<TYPE> buildStore(Class<TYPE> klass) {
-        return new MemoryStore(idGenerator);
+        MemoryStore<TYPE> store = new MemoryStore<TYPE>(idGenerator);
+        store.setMetrics(getMetrics());
+        return store;
     }
 
 }
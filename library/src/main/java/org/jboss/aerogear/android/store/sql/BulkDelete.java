@@ -0,0 +1,98 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.sql;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.jboss.aerogear.android.store.StoreChange;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deletes the rows of many ids with one "in" statement per chunk of ids,
+ * each chunk staying under the 999 host parameters SQLite accepts in a
+ * statement. It is run inside the transaction of the caller.
+ */
+final class BulkDelete {
+
+    static final int MAX_PARAMETERS = 999;
+
+    private BulkDelete() {
+    }
+
+    /**
+     * Deletes the rows of the given ids.
+     *
+     * @param db the database, in a transaction
+     * @param table the name of the table
+     * @param column the id column
+     * @param ids the ids to delete
+     * @param changes the changes to add the removed ids to, null to skip
+     * looking up which of the ids were stored
+     * @return the number of deleted rows
+     */
+    static int delete(SQLiteDatabase db, String table, String column,
+                      Collection<? extends Serializable> ids, StoreChange.Builder changes) {
+        Map<String, Serializable> idsByText = new LinkedHashMap<String, Serializable>();
+        for (Serializable id : ids) {
+            idsByText.put(id.toString(), id);
+        }
+
+        int deleted = 0;
+        List<String> chunk = new ArrayList<String>(Math.min(idsByText.size(), MAX_PARAMETERS));
+        for (String id : idsByText.keySet()) {
+            chunk.add(id);
+            if (chunk.size() == MAX_PARAMETERS) {
+                deleted += deleteChunk(db, table, column, chunk, idsByText, changes);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            deleted += deleteChunk(db, table, column, chunk, idsByText, changes);
+        }
+        return deleted;
+    }
+
+    private static int deleteChunk(SQLiteDatabase db, String table, String column, List<String> chunk,
+                                   Map<String, Serializable> idsByText, StoreChange.Builder changes) {
+        StringBuilder in = new StringBuilder(column).append(" in (");
+        for (int index = 0; index < chunk.size(); index++) {
+            in.append(index == 0 ? "?" : ",?");
+        }
+        in.append(')');
+        String[] args = chunk.toArray(new String[chunk.size()]);
+
+        if (changes != null) {
+            Cursor cursor = db.rawQuery("select distinct " + column + " from " + table + " where " + in, args);
+            try {
+                while (cursor.moveToNext()) {
+                    changes.removed(idsByText.get(cursor.getString(0)));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return db.delete(table, in.toString(), args);
+    }
+
+}
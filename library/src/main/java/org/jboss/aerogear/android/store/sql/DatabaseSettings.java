@@ -0,0 +1,150 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.sql;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Connection settings of a SQL store, applied to its database each time it
+ * is opened, from onConfigure.
+ */
+final class DatabaseSettings {
+
+    private static final String TAG = DatabaseSettings.class.getSimpleName();
+
+    private boolean writeAheadLogging;
+    private Integer walAutoCheckpoint;
+    private Integer pageSize;
+    private Integer cacheSize;
+    private Long mmapSize;
+    private SynchronousMode synchronous;
+    private Boolean tempStoreInMemory;
+
+    void setWriteAheadLogging(boolean writeAheadLogging) {
+        this.writeAheadLogging = writeAheadLogging;
+    }
+
+    void setWalAutoCheckpoint(int pages) {
+        this.walAutoCheckpoint = pages;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the size is not a power of two
+     * between 512 and 65536, which SQLite would silently ignore
+     */
+    void setPageSize(int bytes) {
+        if (bytes < 512 || bytes > 65536 || Integer.bitCount(bytes) != 1) {
+            throw new IllegalArgumentException(bytes + " isn't a power of two between 512 and 65536");
+        }
+        this.pageSize = bytes;
+    }
+
+    void setCacheSize(int size) {
+        this.cacheSize = size;
+    }
+
+    void setMmapSize(long bytes) {
+        this.mmapSize = bytes;
+    }
+
+    void setSynchronous(SynchronousMode synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    void setTempStoreInMemory(boolean tempStoreInMemory) {
+        this.tempStoreInMemory = tempStoreInMemory;
+    }
+
+    /**
+     * Applies the settings to a database being configured.
+     *
+     * The pragmas are connection settings. They are run before write-ahead
+     * logging is enabled, while the database has a single connection, so
+     * they reach the primary connection which all the writes go through.
+     * The connections opened afterwards for concurrent reads keep the
+     * platform defaults, and so does the synchronous mode of the primary
+     * connection, which the platform sets itself when it enables write-ahead
+     * logging.
+     */
+    void configure(SQLiteDatabase db) {
+        if (pageSize != null && pageSize != queryPragma(db, "page_size")) {
+            // the platform already wrote its metadata table, the pages are
+            // only resized by rebuilding the database
+            pragma(db, "page_size = " + pageSize);
+            db.execSQL("vacuum");
+            long actual = queryPragma(db, "page_size");
+            if (actual != pageSize) {
+                Log.w(TAG, "The page size is still " + actual + " after rebuilding the database for " + pageSize);
+            }
+        }
+        if (cacheSize != null) {
+            pragma(db, "cache_size = " + cacheSize);
+        }
+        if (mmapSize != null) {
+            pragma(db, "mmap_size = " + mmapSize);
+        }
+        if (synchronous != null) {
+            pragma(db, "synchronous = " + synchronous.name());
+        }
+        if (tempStoreInMemory != null) {
+            pragma(db, "temp_store = " + (tempStoreInMemory ? "MEMORY" : "FILE"));
+        }
+        if (walAutoCheckpoint != null) {
+            pragma(db, "wal_autocheckpoint = " + walAutoCheckpoint);
+        }
+        if (writeAheadLogging) {
+            db.enableWriteAheadLogging();
+        }
+    }
+
+    /**
+     * Starts a write transaction. With write-ahead logging it is started as
+     * non exclusive, letting the other connections read while it runs.
+     */
+    static void beginWrite(SQLiteDatabase db) {
+        if (db.isWriteAheadLoggingEnabled()) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    private static long queryPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("pragma " + pragma, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Runs a pragma, with rawQuery since some of them return a row, which
+     * execSQL does not accept.
+     */
+    static void pragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("pragma " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+}
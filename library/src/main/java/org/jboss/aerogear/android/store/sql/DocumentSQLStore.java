@@ -0,0 +1,840 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.sql;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+import android.util.Pair;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import org.jboss.aerogear.android.core.Callback;
+import org.jboss.aerogear.android.core.ReadFilter;
+import org.jboss.aerogear.android.store.OnStoreChangedListener;
+import org.jboss.aerogear.android.store.Store;
+import org.jboss.aerogear.android.store.StoreChange;
+import org.jboss.aerogear.android.store.StoreMetrics;
+import org.jboss.aerogear.android.store.StoreMetrics.Operation;
+import org.jboss.aerogear.android.store.generator.IdGenerator;
+import org.jboss.aerogear.android.store.util.ChangeNotifier;
+import org.jboss.aerogear.android.store.util.ClassMetadata;
+import org.jboss.aerogear.android.store.util.StoreExecutors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * SQL implementation of {@link Store} which keeps every item in a single row
+ * holding its id and its JSON document.
+ * <p>
+ * Property paths given as indexed properties (for instance "name" or
+ * "address.city") are copied into their own indexed columns when an item is
+ * saved, so {@link #readWithFilter(ReadFilter)} evaluates them in SQL. Paths
+ * going through an array can't be indexed. Any other property of the where
+ * clause is matched against the documents after they are read. Values are
+ * compared with their JSON type, a number never matches a string. Operators
+ * such as $gt, $in or $or are not supported and throw an
+ * {@link IllegalArgumentException}.
+ */
+public class DocumentSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
+
+    private static final String TAG = DocumentSQLStore.class.getSimpleName();
+
+    private final static String CREATE_DOCUMENTS_TABLE = "create table if not exists %s_document "
+            + " ( ID text primary key not null,"
+            + "  DOCUMENT text not null )";
+
+    private final static String CREATE_INDEXED_PROPERTIES_TABLE = "create table if not exists %s_indexed_property "
+            + " ( NAME text primary key not null )";
+
+    private final Class<T> klass;
+    private final String className;
+    private final Gson gson;
+    private final IdGenerator generator;
+    private final List<String> indexedProperties;
+    private final List<String[]> indexedPaths;
+    private final List<String> indexedColumns;
+
+    private SQLiteDatabase database;
+    private SQLiteStatement saveStatement;
+    private DatabaseSettings settings = new DatabaseSettings();
+    private final ChangeNotifier changeNotifier = new ChangeNotifier();
+    private StoreMetrics metrics = StoreMetrics.disabled();
+    private SlowQueryLog slowQueryLog;
+
+    public DocumentSQLStore(Class<T> klass, Context context, GsonBuilder builder, IdGenerator generator,
+                            Collection<String> indexedProperties) {
+        super(context, klass.getSimpleName() + "_document", null, 1);
+        this.klass = klass;
+        this.className = klass.getSimpleName();
+        this.gson = builder.create();
+        this.generator = generator;
+        this.indexedProperties = new ArrayList<String>(indexedProperties);
+        this.indexedPaths = new ArrayList<String[]>(indexedProperties.size());
+        this.indexedColumns = new ArrayList<String>(indexedProperties.size());
+        for (String indexedProperty : indexedProperties) {
+            if (indexedProperty.indexOf('[') >= 0 || indexedProperty.indexOf(']') >= 0) {
+                throw new IllegalArgumentException(indexedProperty + " goes through an array and can't be indexed");
+            }
+            this.indexedPaths.add(indexedProperty.split("\\."));
+            this.indexedColumns.add(columnName(indexedProperty));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<T> readAll() {
+        ensureOpen();
+
+        long start = metrics.start();
+        String sql = String.format("select DOCUMENT from %s_document order by ID", className);
+        Cursor cursor = query(sql, new String[0]);
+        List<T> data;
+        try {
+            data = new ArrayList<T>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                data.add(gson.fromJson(cursor.getString(0), klass));
+            }
+        } finally {
+            cursor.close();
+        }
+        metrics.recordEntitiesRead(data.size());
+        metrics.stop(Operation.READ_ALL, start);
+        return data;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T read(Serializable id) {
+        ensureOpen();
+
+        long start = metrics.start();
+        String sql = String.format("select DOCUMENT from %s_document where ID = ?", className);
+        Cursor cursor = query(sql, new String[]{id.toString()});
+        T item = null;
+        try {
+            if (cursor.moveToFirst()) {
+                item = gson.fromJson(cursor.getString(0), klass);
+                metrics.recordEntitiesRead(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        metrics.stop(Operation.READ, start);
+        return item;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Properties stored in indexed columns are matched in SQL, the remaining
+     * ones on the documents returned by that query.
+     */
+    @Override
+    public List<T> readWithFilter(ReadFilter filter) {
+        ensureOpen();
+
+        long start = metrics.start();
+        List<T> results = new ArrayList<T>();
+        for (Pair<String, JsonObject> document : queryDocuments(filter)) {
+            results.add(gson.fromJson(document.second, klass));
+        }
+        metrics.recordEntitiesRead(results.size());
+        metrics.stop(Operation.READ_WITH_FILTER, start);
+        return results;
+    }
+
+    /**
+     * Runs a filter, returning the ids and the documents of the matching
+     * items.
+     */
+    private List<Pair<String, JsonObject>> queryDocuments(ReadFilter filter) {
+        if (filter == null) {
+            filter = new ReadFilter();
+        }
+        JsonObject where = (JsonObject) new JsonParser().parse(filter.getWhere().toString());
+        List<Pair<String, JsonPrimitive>> queryList = new ArrayList<Pair<String, JsonPrimitive>>();
+        buildKeyValuePairs(where, queryList, "");
+
+        int limit = filter.getLimit() == null ? Integer.MAX_VALUE : filter.getLimit();
+        int offset = filter.getOffset() == null ? 0 : filter.getOffset();
+
+        StringBuilder sql = new StringBuilder(String.format("select ID, DOCUMENT from %s_document", className));
+        List<String> bindArgs = new ArrayList<String>();
+        List<Pair<Pattern, JsonPrimitive>> documentQueries = new ArrayList<Pair<Pattern, JsonPrimitive>>();
+        appendConditions(sql, queryList, bindArgs, documentQueries);
+        sql.append(" order by ID");
+        if (documentQueries.isEmpty()) {
+            sql.append(" limit ").append(limit).append(" offset ").append(offset);
+        }
+
+        List<Pair<String, JsonObject>> results = new ArrayList<Pair<String, JsonObject>>();
+        Cursor cursor = query(sql.toString(), bindArgs.toArray(new String[bindArgs.size()]));
+        try {
+            int skipped = 0;
+            while (cursor.moveToNext() && results.size() < limit) {
+                JsonObject document = (JsonObject) new JsonParser().parse(cursor.getString(1));
+                if (documentQueries.isEmpty()) {
+                    results.add(Pair.create(cursor.getString(0), document));
+                } else if (matches(document, documentQueries)) {
+                    if (skipped < offset) {
+                        skipped++;
+                    } else {
+                        results.add(Pair.create(cursor.getString(0), document));
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return results;
+    }
+
+    /**
+     * Appends the conditions on the indexed columns to a select, and collects
+     * the ones to check on the documents.
+     */
+    private void appendConditions(StringBuilder sql, List<Pair<String, JsonPrimitive>> queryList, List<String> bindArgs,
+                                  List<Pair<Pattern, JsonPrimitive>> documentQueries) {
+        String conjunction = " where ";
+        for (Pair<String, JsonPrimitive> kv : queryList) {
+            int index = indexedProperties.indexOf(kv.first);
+            if (index >= 0) {
+                sql.append(conjunction).append(quote(indexedColumns.get(index))).append(" = ");
+                conjunction = " and ";
+                appendValue(sql, bindArgs, kv.second);
+            } else {
+                documentQueries.add(new Pair<Pattern, JsonPrimitive>(toPattern(kv.first), kv.second));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count() {
+        ensureOpen();
+
+        return DatabaseUtils.queryNumEntries(database, className + "_document");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Filters on indexed properties only are counted in SQL, the others by
+     * matching the documents.
+     */
+    @Override
+    public long count(ReadFilter filter) {
+        ensureOpen();
+
+        if (filter == null) {
+            filter = new ReadFilter();
+        }
+        JsonObject where = (JsonObject) new JsonParser().parse(filter.getWhere().toString());
+        List<Pair<String, JsonPrimitive>> queryList = new ArrayList<Pair<String, JsonPrimitive>>();
+        buildKeyValuePairs(where, queryList, "");
+
+        StringBuilder sql = new StringBuilder(String.format("select ID from %s_document", className));
+        List<String> bindArgs = new ArrayList<String>();
+        List<Pair<Pattern, JsonPrimitive>> documentQueries = new ArrayList<Pair<Pattern, JsonPrimitive>>();
+        appendConditions(sql, queryList, bindArgs, documentQueries);
+        if (!documentQueries.isEmpty()) {
+            return queryDocuments(filter).size();
+        }
+
+        int limit = filter.getLimit() == null ? Integer.MAX_VALUE : filter.getLimit();
+        int offset = filter.getOffset() == null ? 0 : filter.getOffset();
+        sql.append(" limit ").append(limit).append(" offset ").append(offset);
+        return longForQuery("select count(*) from (" + sql + ")",
+                bindArgs.toArray(new String[bindArgs.size()]));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(Serializable id) {
+        ensureOpen();
+
+        String sql = String.format("select exists (select 1 from %s_document where ID = ?)", className);
+        return longForQuery(sql, new String[]{id.toString()}) != 0;
+    }
+
+    private Cursor query(String sql, String[] args) {
+        return slowQueryLog == null ? database.rawQuery(sql, args) : slowQueryLog.query(database, sql, args);
+    }
+
+    private long longForQuery(String sql, String[] args) {
+        return slowQueryLog == null ? DatabaseUtils.longForQuery(database, sql, args)
+                : slowQueryLog.longForQuery(database, sql, args);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void save(T item) {
+        ensureOpen();
+
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        long bytes;
+        DatabaseSettings.beginWrite(this.database);
+        try {
+            bytes = saveItem(item, changes);
+            this.database.setTransactionSuccessful();
+        } finally {
+            this.database.endTransaction();
+        }
+        metrics.recordWrite(1, bytes);
+        metrics.stop(Operation.SAVE, start);
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void save(Collection<T> items) {
+        ensureOpen();
+
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        long bytes = 0;
+        DatabaseSettings.beginWrite(this.database);
+        try {
+            for (T item : items) {
+                bytes += saveItem(item, changes);
+            }
+            this.database.setTransactionSuccessful();
+        } finally {
+            this.database.endTransaction();
+        }
+        metrics.recordWrite(items.size(), bytes);
+        metrics.stop(Operation.BULK_SAVE, start);
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * Writes the row of an item.
+     *
+     * @return the UTF-8 length of its document if metrics are enabled, else 0
+     */
+    private long saveItem(T item, StoreChange.Builder changes) {
+        Serializable idValue = ClassMetadata.of(item.getClass()).getOrGenerateId(item, generator);
+
+        if (changeNotifier.hasListeners()) {
+            String sql = String.format("select count(*) from %s_document where ID = ?", className);
+            if (DatabaseUtils.longForQuery(database, sql, new String[]{idValue.toString()}) > 0) {
+                changes.updated(idValue);
+            } else {
+                changes.inserted(idValue);
+            }
+        }
+
+        JsonObject document = (JsonObject) gson.toJsonTree(item, klass);
+
+        if (saveStatement == null) {
+            saveStatement = database.compileStatement(buildSaveSql());
+        }
+        String json = document.toString();
+        saveStatement.clearBindings();
+        saveStatement.bindString(1, idValue.toString());
+        saveStatement.bindString(2, json);
+        for (int index = 0; index < indexedPaths.size(); index++) {
+            bindValue(saveStatement, index + 3, find(document, indexedPaths.get(index)));
+        }
+        saveStatement.executeInsert();
+        return metrics.isEnabled() ? StoreMetrics.utf8Length(json) : 0;
+    }
+
+    private String buildSaveSql() {
+        StringBuilder columns = new StringBuilder("ID, DOCUMENT");
+        StringBuilder values = new StringBuilder("?, ?");
+        for (String indexedColumn : indexedColumns) {
+            columns.append(", ").append(quote(indexedColumn));
+            values.append(", ?");
+        }
+        return String.format("insert or replace into %s_document (%s) values (%s)", className, columns, values);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        ensureOpen();
+
+        StoreChange.Builder changes = new StoreChange.Builder();
+        DatabaseSettings.beginWrite(this.database);
+        try {
+            if (changeNotifier.hasListeners()) {
+                Cursor cursor = database.rawQuery(String.format("select ID from %s_document", className), null);
+                try {
+                    while (cursor.moveToNext()) {
+                        changes.removed(ClassMetadata.of(klass).idFromText(cursor.getString(0)));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            String sql = String.format("delete from %s_document", className);
+            database.execSQL(sql);
+            this.database.setTransactionSuccessful();
+        } finally {
+            this.database.endTransaction();
+        }
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        ensureOpen();
+
+        String sql = String.format("select 1 from %s_document limit 1", className);
+        Cursor cursor = database.rawQuery(sql, null);
+        try {
+            return !cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(Serializable id) {
+        ensureOpen();
+
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        if (database.delete(className + "_document", "ID = ?", new String[]{id.toString()}) > 0) {
+            changes.removed(id);
+        }
+        metrics.stop(Operation.REMOVE, start);
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The ids are deleted in one transaction, with one statement per chunk
+     * of 999 ids.
+     */
+    @Override
+    public void remove(Collection<? extends Serializable> ids) {
+        ensureOpen();
+
+        StoreChange.Builder changes = new StoreChange.Builder();
+        DatabaseSettings.beginWrite(this.database);
+        try {
+            BulkDelete.delete(database, className + "_document", "ID", ids,
+                    changeNotifier.hasListeners() ? changes : null);
+            this.database.setTransactionSuccessful();
+        } finally {
+            this.database.endTransaction();
+        }
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The matching ids are read like in {@link #readWithFilter(ReadFilter)},
+     * then deleted in one transaction.
+     */
+    @Override
+    public void removeWithFilter(ReadFilter filter) {
+        ensureOpen();
+
+        StoreChange.Builder changes = new StoreChange.Builder();
+        DatabaseSettings.beginWrite(this.database);
+        try {
+            List<Serializable> ids = new ArrayList<Serializable>();
+            for (Pair<String, JsonObject> document : queryDocuments(filter)) {
+                ids.add(ClassMetadata.of(klass).idFromText(document.first));
+            }
+            BulkDelete.delete(database, className + "_document", "ID", ids,
+                    changeNotifier.hasListeners() ? changes : null);
+            this.database.setTransactionSuccessful();
+        } finally {
+            this.database.endTransaction();
+        }
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addOnChangeListener(OnStoreChangedListener listener) {
+        changeNotifier.addListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeOnChangeListener(OnStoreChangedListener listener) {
+        changeNotifier.removeListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(String.format(CREATE_DOCUMENTS_TABLE, className));
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    /**
+     * Adds the columns and indexes of the indexed properties missing from the
+     * documents table and fills them from the stored documents. The columns
+     * of properties which were not indexed at the last open are filled again,
+     * as the documents saved meanwhile left them empty.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        Set<String> columns = new HashSet<String>();
+        Cursor cursor = db.rawQuery(String.format("pragma table_info(%s_document)", className), null);
+        try {
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(cursor.getColumnIndex("name")).toLowerCase(Locale.US));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        db.beginTransaction();
+        try {
+            db.execSQL(String.format(CREATE_INDEXED_PROPERTIES_TABLE, className));
+            Set<String> previouslyIndexed = new HashSet<String>();
+            cursor = db.rawQuery(String.format("select NAME from %s_indexed_property", className), null);
+            try {
+                while (cursor.moveToNext()) {
+                    previouslyIndexed.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            for (int index = 0; index < indexedColumns.size(); index++) {
+                String indexedColumn = indexedColumns.get(index);
+                if (!columns.contains(indexedColumn.toLowerCase(Locale.US))) {
+                    db.execSQL(String.format("alter table %s_document add column %s", className, quote(indexedColumn)));
+                    db.execSQL(String.format("create index if not exists %s on %s_document (%s)",
+                            quote(className + "_document_" + indexedColumn + "_index"), className, quote(indexedColumn)));
+                } else if (previouslyIndexed.contains(indexedProperties.get(index))) {
+                    continue;
+                }
+                fillColumn(db, indexedColumn, indexedPaths.get(index));
+            }
+
+            db.execSQL(String.format("delete from %s_indexed_property", className));
+            SQLiteStatement insert = db.compileStatement(
+                    String.format("insert or ignore into %s_indexed_property (NAME) values (?)", className));
+            try {
+                for (String indexedProperty : indexedProperties) {
+                    insert.bindString(1, indexedProperty);
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void fillColumn(SQLiteDatabase db, String indexedColumn, String[] path) {
+        SQLiteStatement update = db.compileStatement(
+                String.format("update %s_document set %s = ? where ID = ?", className, quote(indexedColumn)));
+        Cursor cursor = db.rawQuery(String.format("select ID, DOCUMENT from %s_document", className), null);
+        try {
+            while (cursor.moveToNext()) {
+                JsonObject document = (JsonObject) new JsonParser().parse(cursor.getString(1));
+                update.clearBindings();
+                bindValue(update, 1, find(document, path));
+                update.bindString(2, cursor.getString(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            cursor.close();
+            update.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        settings.configure(db);
+    }
+
+    void setSettings(DatabaseSettings settings) {
+        this.settings = settings;
+    }
+
+    void setMetrics(StoreMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    public void open(final Callback<DocumentSQLStore<T>> onReady) {
+        StoreExecutors.openers().execute(new Runnable() {
+            @Override
+            public void run() {
+                Runnable delivery;
+                try {
+                    DocumentSQLStore.this.database = getWritableDatabase();
+                    delivery = new Runnable() {
+                        @Override
+                        public void run() {
+                            onReady.onSuccess(DocumentSQLStore.this);
+                        }
+                    };
+                } catch (final Exception e) {
+                    Log.e(TAG, "There was an error loading the database", e);
+                    delivery = new Runnable() {
+                        @Override
+                        public void run() {
+                            onReady.onFailure(e);
+                        }
+                    };
+                }
+                StoreExecutors.mainThread().execute(delivery);
+            }
+        });
+    }
+
+    public void openSync() {
+        this.database = getWritableDatabase();
+    }
+
+    @Override
+    public void close() {
+        if (this.saveStatement != null) {
+            this.saveStatement.close();
+            this.saveStatement = null;
+        }
+        if (this.database != null && this.database.isOpen()) {
+            this.database.close();
+        }
+    }
+
+    private static JsonElement find(JsonObject document, String[] path) {
+        JsonElement element = document;
+        for (String name : path) {
+            if (element == null || !element.isJsonObject()) {
+                return null;
+            }
+            element = element.getAsJsonObject().get(name);
+        }
+        return element;
+    }
+
+    /**
+     * Binds a JSON value keeping its type: strings as text, numbers as integers
+     * or reals and booleans as 1 or 0. Anything else is bound as null.
+     */
+    private static void bindValue(SQLiteStatement statement, int index, JsonElement value) {
+        if (value == null || !value.isJsonPrimitive()) {
+            statement.bindNull(index);
+            return;
+        }
+
+        JsonPrimitive primitive = value.getAsJsonPrimitive();
+        if (primitive.isBoolean()) {
+            statement.bindLong(index, primitive.getAsBoolean() ? 1 : 0);
+        } else if (primitive.isNumber()) {
+            double number = primitive.getAsDouble();
+            if (number == Math.rint(number) && Math.abs(number) < Long.MAX_VALUE) {
+                statement.bindLong(index, primitive.getAsLong());
+            } else {
+                statement.bindDouble(index, number);
+            }
+        } else {
+            statement.bindString(index, primitive.getAsString());
+        }
+    }
+
+    /**
+     * Appends a filter value to a query. Query arguments are always bound as
+     * text, so numbers are cast back to numeric to compare with the typed
+     * column values.
+     */
+    private static void appendValue(StringBuilder sql, List<String> bindArgs, JsonPrimitive value) {
+        if (value.isBoolean()) {
+            sql.append(value.getAsBoolean() ? "1" : "0");
+        } else if (value.isNumber()) {
+            sql.append("cast(? as numeric)");
+            bindArgs.add(value.getAsNumber().toString());
+        } else {
+            sql.append("?");
+            bindArgs.add(value.getAsString());
+        }
+    }
+
+    /**
+     * Names the column of an indexed property. Lower case letters and digits
+     * are kept, any other character is written as its hexadecimal code
+     * between underscores, so the names of two properties never collide,
+     * even compared without case as SQLite does, nor with ID or DOCUMENT.
+     */
+    private static String columnName(String indexedProperty) {
+        StringBuilder column = new StringBuilder("IDX_");
+        for (char character : indexedProperty.toCharArray()) {
+            if ((character >= 'a' && character <= 'z') || (character >= '0' && character <= '9')) {
+                column.append(character);
+            } else {
+                column.append('_').append(Integer.toHexString(character)).append('_');
+            }
+        }
+        return column.toString();
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Translates a filter key into a pattern over flattened property paths,
+     * with the same meaning of % and _ as the SQL LIKE operator.
+     */
+    private static Pattern toPattern(String key) {
+        StringBuilder regex = new StringBuilder();
+        for (char character : key.toCharArray()) {
+            if (character == '%') {
+                regex.append(".*");
+            } else if (character == '_') {
+                regex.append(".");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(character)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    private static boolean matches(JsonObject document, List<Pair<Pattern, JsonPrimitive>> documentQueries) {
+        List<Pair<String, JsonPrimitive>> properties = new ArrayList<Pair<String, JsonPrimitive>>();
+        flatten(document, "", properties);
+
+        for (Pair<Pattern, JsonPrimitive> query : documentQueries) {
+            boolean found = false;
+            for (Pair<String, JsonPrimitive> property : properties) {
+                if (query.second.equals(property.second) && query.first.matcher(property.first).matches()) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void flatten(JsonElement element, String path, List<Pair<String, JsonPrimitive>> properties) {
+        if (element.isJsonObject()) {
+            String pathVar = path.isEmpty() ? "" : ".";
+            for (Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                flatten(member.getValue(), path + pathVar + member.getKey(), properties);
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            for (int index = 0; index < array.size(); index++) {
+                flatten(array.get(index), path + "[" + index + "]", properties);
+            }
+        } else if (element.isJsonPrimitive()) {
+            properties.add(new Pair<String, JsonPrimitive>(path, element.getAsJsonPrimitive()));
+        }
+    }
+
+    private void buildKeyValuePairs(JsonObject where, List<Pair<String, JsonPrimitive>> keyValues, String parentPath) {
+        String pathVar = parentPath.isEmpty() ? "" : ".";// Set a dot if parent path is not empty
+        for (Entry<String, JsonElement> entry : where.entrySet()) {
+            if (entry.getKey().startsWith("$")) {
+                throw new IllegalArgumentException(entry.getKey() + " isn't supported by the document storage mode");
+            }
+            String path = parentPath + pathVar + entry.getKey();
+            JsonElement jsonValue = entry.getValue();
+            if (jsonValue.isJsonObject()) {
+                buildKeyValuePairs((JsonObject) jsonValue, keyValues, path);
+            } else if (jsonValue.isJsonPrimitive()) {
+                keyValues.add(new Pair<String, JsonPrimitive>(path, jsonValue.getAsJsonPrimitive()));
+            } else {
+                throw new IllegalArgumentException(jsonValue + " isn't a JsonPrimitive");
+            }
+        }
+    }
+
+    private boolean isOpen() {
+        return this.database != null;
+    }
+
+    private void ensureOpen() {
+        if (!isOpen()) {
+            Log.w(TAG, "Store is not opened, trying to open.");
+            openSync();
+        }
+    }
+
+}
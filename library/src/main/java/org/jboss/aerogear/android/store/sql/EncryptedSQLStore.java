@@ -19,24 +19,29 @@ package org.jboss.aerogear.android.store.sql;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.os.AsyncTask;
 import android.util.Log;
 
 import com.google.gson.GsonBuilder;
 
 import org.jboss.aerogear.android.core.Callback;
 import org.jboss.aerogear.android.core.ReadFilter;
-import org.jboss.aerogear.android.core.reflection.Property;
-import org.jboss.aerogear.android.core.reflection.Scan;
 import org.jboss.aerogear.android.security.EncryptionService;
 import org.jboss.aerogear.android.security.InvalidKeyException;
 import org.jboss.aerogear.android.security.SecurityManager;
 import org.jboss.aerogear.android.security.keystore.KeyStoreBasedEncryptionConfiguration;
+import org.jboss.aerogear.android.store.OnStoreChangedListener;
 import org.jboss.aerogear.android.store.Store;
+import org.jboss.aerogear.android.store.StoreChange;
+import org.jboss.aerogear.android.store.StoreMetrics;
+import org.jboss.aerogear.android.store.StoreMetrics.Operation;
 import org.jboss.aerogear.android.store.generator.IdGenerator;
+import org.jboss.aerogear.android.store.util.ChangeNotifier;
+import org.jboss.aerogear.android.store.util.ClassMetadata;
 import org.jboss.aerogear.android.store.util.CryptoEntityUtil;
+import org.jboss.aerogear.android.store.util.StoreExecutors;
 import org.jboss.aerogear.crypto.RandomUtils;
 
 import java.io.Serializable;
@@ -61,6 +66,10 @@ public class EncryptedSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
 
     private SQLiteDatabase database;
     private CryptoEntityUtil<T> cryptoEntityUtil;
+    private DatabaseSettings settings = new DatabaseSettings();
+    private final ChangeNotifier changeNotifier = new ChangeNotifier();
+    private StoreMetrics metrics = StoreMetrics.disabled();
+    private SlowQueryLog slowQueryLog;
 
     public EncryptedSQLStore(Class<T> modelClass, Context context, GsonBuilder builder,
                              IdGenerator idGenerator, String password) {
@@ -119,6 +128,24 @@ public class EncryptedSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
     }
 
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        settings.configure(db);
+    }
+
+    void setSettings(DatabaseSettings settings) {
+        this.settings = settings;
+    }
+
+    void setMetrics(StoreMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
     @Override
     public void onOpen(SQLiteDatabase db) {
 
@@ -159,10 +186,11 @@ public class EncryptedSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public Collection<T> readAll() throws InvalidKeyException {
         ensureOpen();
 
+        long start = metrics.start();
         ArrayList<T> dataList = new ArrayList<T>();
 
         String sql = "SELECT " + COLUMN_DATA + " FROM " + TABLE_NAME;
-        Cursor cursor = getReadableDatabase().rawQuery(sql, new String[0]);
+        Cursor cursor = query(sql, new String[0]);
         try {
             while (cursor.moveToNext()) {
                 byte[] encryptedData = cursor.getBlob(0);
@@ -173,6 +201,8 @@ public class EncryptedSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
             cursor.close();
         }
 
+        metrics.recordEntitiesRead(dataList.size());
+        metrics.stop(Operation.READ_ALL, start);
         return dataList;
     }
 
@@ -186,20 +216,21 @@ public class EncryptedSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public T read(Serializable id) throws InvalidKeyException {
         ensureOpen();
 
+        long start = metrics.start();
         String sql = "SELECT " + COLUMN_DATA + " FROM " + TABLE_NAME + " WHERE " + COLUMN_ID + " = ?";
-        Cursor cursor = getReadableDatabase().rawQuery(sql, new String[]{id.toString()});
-        cursor.moveToFirst();
-
-        if (cursor.getCount() == 0) {
-            return null;
-        }
-
+        Cursor cursor = query(sql, new String[]{id.toString()});
+        T item = null;
         try {
-            byte[] encryptedData = cursor.getBlob(0);
-            return cryptoEntityUtil.decrypt(encryptedData);
+            if (cursor.moveToFirst()) {
+                byte[] encryptedData = cursor.getBlob(0);
+                item = cryptoEntityUtil.decrypt(encryptedData);
+                metrics.recordEntitiesRead(1);
+            }
         } finally {
             cursor.close();
         }
+        metrics.stop(Operation.READ, start);
+        return item;
     }
 
     /**
@@ -218,13 +249,19 @@ public class EncryptedSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public void save(T item) {
         ensureOpen();
 
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        long bytes;
         this.database.beginTransaction();
         try {
-            saveItem(item);
+            bytes = saveItem(item, changes);
             this.database.setTransactionSuccessful();
         } finally {
             this.database.endTransaction();
         }
+        metrics.recordWrite(1, bytes);
+        metrics.stop(Operation.SAVE, start);
+        changeNotifier.publish(this, changes);
     }
 
     /**
@@ -235,32 +272,43 @@ public class EncryptedSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public void save(Collection<T> items) {
         ensureOpen();
 
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        long bytes = 0;
         this.database.beginTransaction();
         try {
             for (T item : items) {
-                saveItem(item);
+                bytes += saveItem(item, changes);
             }
             this.database.setTransactionSuccessful();
         } finally {
             this.database.endTransaction();
         }
+        metrics.recordWrite(items.size(), bytes);
+        metrics.stop(Operation.BULK_SAVE, start);
+        changeNotifier.publish(this, changes);
     }
 
-    private void saveItem(T item) {
-        String recordIdFieldName = Scan.recordIdFieldNameIn(item.getClass());
-        Property property = new Property(item.getClass(), recordIdFieldName);
-        Serializable idValue = (Serializable) property.getValue(item);
-
-        if (idValue == null) {
-            idValue = idGenerator.generate();
-            property.setValue(item, idValue);
-        }
+    /**
+     * Encrypts and writes the row of an item.
+     *
+     * @return the length of the encrypted item
+     */
+    private int saveItem(T item, StoreChange.Builder changes) {
+        Serializable idValue = ClassMetadata.of(item.getClass()).getOrGenerateId(item, idGenerator);
 
+        byte[] encrypted = cryptoEntityUtil.encrypt(item);
         ContentValues values = new ContentValues();
         values.put(COLUMN_ID, idValue.toString());
-        values.put(COLUMN_DATA, cryptoEntityUtil.encrypt(item));
+        values.put(COLUMN_DATA, encrypted);
 
+        if (this.database.delete(TABLE_NAME, COLUMN_ID + " = ?", new String[]{idValue.toString()}) > 0) {
+            changes.updated(idValue);
+        } else {
+            changes.inserted(idValue);
+        }
         this.database.insert(TABLE_NAME, null, values);
+        return encrypted.length;
     }
 
     /**
@@ -271,8 +319,26 @@ public class EncryptedSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public void reset() {
         ensureOpen();
 
-        String sql = String.format("DELETE FROM " + TABLE_NAME);
-        this.database.execSQL(sql);
+        StoreChange.Builder changes = new StoreChange.Builder();
+        this.database.beginTransaction();
+        try {
+            if (changeNotifier.hasListeners()) {
+                Cursor cursor = this.database.rawQuery("SELECT " + COLUMN_ID + " FROM " + TABLE_NAME, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        changes.removed(ClassMetadata.of(modelClass).idFromText(cursor.getString(0)));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            String sql = String.format("DELETE FROM " + TABLE_NAME);
+            this.database.execSQL(sql);
+            this.database.setTransactionSuccessful();
+        } finally {
+            this.database.endTransaction();
+        }
+        changeNotifier.publish(this, changes);
     }
 
     /**
@@ -283,8 +349,60 @@ public class EncryptedSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public void remove(Serializable id) {
         ensureOpen();
 
-        String sql = "DELETE FROM " + TABLE_NAME + " WHERE " + COLUMN_ID + " = ?";
-        this.database.execSQL(sql, new Object[]{id});
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        if (this.database.delete(TABLE_NAME, COLUMN_ID + " = ?", new String[]{id.toString()}) > 0) {
+            changes.removed(id);
+        }
+        metrics.stop(Operation.REMOVE, start);
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The ids are deleted in one transaction, with one statement per chunk
+     * of 999 ids.
+     */
+    @Override
+    public void remove(Collection<? extends Serializable> ids) {
+        ensureOpen();
+
+        StoreChange.Builder changes = new StoreChange.Builder();
+        this.database.beginTransaction();
+        try {
+            BulkDelete.delete(database, TABLE_NAME, COLUMN_ID, ids, changeNotifier.hasListeners() ? changes : null);
+            this.database.setTransactionSuccessful();
+        } finally {
+            this.database.endTransaction();
+        }
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeWithFilter(ReadFilter filter) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     */
+    @Override
+    public void addOnChangeListener(OnStoreChangedListener listener) {
+        changeNotifier.addListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     */
+    @Override
+    public void removeOnChangeListener(OnStoreChangedListener listener) {
+        changeNotifier.removeListener(listener);
     }
 
     /**
@@ -295,38 +413,82 @@ public class EncryptedSQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public boolean isEmpty() {
         ensureOpen();
 
-        String sql = "SELECT COUNT(" + COLUMN_ID + ") FROM " + TABLE_NAME;
+        String sql = "SELECT 1 FROM " + TABLE_NAME + " LIMIT 1";
         Cursor cursor = getReadableDatabase().rawQuery(sql, null);
-        cursor.moveToFirst();
-        boolean result = (cursor.getInt(0) == 0);
-        cursor.close();
-        return result;
+        try {
+            return !cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
-    public void open(final Callback<EncryptedSQLStore<T>> onReady) {
-        new AsyncTask<Void, Void, Void>() {
-            private Exception exception;
+    /**
+     * {@inheritDoc}
+     *
+     */
+    @Override
+    public long count() {
+        ensureOpen();
+
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_NAME);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count(ReadFilter filter) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     */
+    @Override
+    public boolean exists(Serializable id) {
+        ensureOpen();
+
+        String sql = "SELECT EXISTS (SELECT 1 FROM " + TABLE_NAME + " WHERE " + COLUMN_ID + " = ?)";
+        return longForQuery(sql, new String[]{id.toString()}) != 0;
+    }
 
+    private Cursor query(String sql, String[] args) {
+        SQLiteDatabase db = getReadableDatabase();
+        return slowQueryLog == null ? db.rawQuery(sql, args) : slowQueryLog.query(db, sql, args);
+    }
+
+    private long longForQuery(String sql, String[] args) {
+        SQLiteDatabase db = getReadableDatabase();
+        return slowQueryLog == null ? DatabaseUtils.longForQuery(db, sql, args)
+                : slowQueryLog.longForQuery(db, sql, args);
+    }
+
+    public void open(final Callback<EncryptedSQLStore<T>> onReady) {
+        StoreExecutors.openers().execute(new Runnable() {
             @Override
-            protected Void doInBackground(Void... params) {
+            public void run() {
+                Runnable delivery;
                 try {
                     EncryptedSQLStore.this.database = getWritableDatabase();
-                } catch (Exception e) {
-                    this.exception = e;
+                    delivery = new Runnable() {
+                        @Override
+                        public void run() {
+                            onReady.onSuccess(EncryptedSQLStore.this);
+                        }
+                    };
+                } catch (final Exception e) {
                     Log.e(TAG, "There was an error loading the database", e);
+                    delivery = new Runnable() {
+                        @Override
+                        public void run() {
+                            onReady.onFailure(e);
+                        }
+                    };
                 }
-                return null;
-            }
-
-            @Override
-            protected void onPostExecute(Void result) {
-                if (exception != null) {
-                    onReady.onFailure(exception);
-                } else {
-                    onReady.onSuccess(EncryptedSQLStore.this);
-                }
+                StoreExecutors.mainThread().execute(delivery);
             }
-        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
+        });
     }
 
     public void openSync() {
@@ -33,6 +33,8 @@ public final class EncryptedSQLStoreConfiguration extends StoreConfiguration<Enc
     private GsonBuilder builder = new GsonBuilder();
     private IdGenerator idGenerator = new DefaultIdGenerator();
     private String passphrase;
+    private final DatabaseSettings settings = new DatabaseSettings();
+    private SlowQueryLog slowQueryLog;
 
     public EncryptedSQLStoreConfiguration withContext(Context context) {
         this.context = context;
@@ -54,13 +56,92 @@ public final class EncryptedSQLStoreConfiguration extends StoreConfiguration<Enc
         return this;
     }
 
+    /**
+     * Sets the size of the database pages in bytes, a power of two between
+     * 512 and 65536. An existing database is rebuilt with the new page size
+     * the first time it is opened with it.
+     *
+     * @param bytes the page size
+     * @return the current configuration
+     * @throws IllegalArgumentException if the size is out of range or not a
+     * power of two
+     */
+    public EncryptedSQLStoreConfiguration withPageSize(int bytes) {
+        this.settings.setPageSize(bytes);
+        return this;
+    }
+
+    /**
+     * Sets how much of the database is cached in memory, in pages or, when
+     * negative, in kibibytes.
+     *
+     * @param size the cache size
+     * @return the current configuration
+     */
+    public EncryptedSQLStoreConfiguration withCacheSize(int size) {
+        this.settings.setCacheSize(size);
+        return this;
+    }
+
+    /**
+     * Sets how many bytes of the database file are memory-mapped for reads.
+     * Zero turns memory-mapped reads off. It is ignored by SQLite versions
+     * older than 3.7.17.
+     *
+     * @param bytes the memory-mapped size
+     * @return the current configuration
+     */
+    public EncryptedSQLStoreConfiguration withMmapSize(long bytes) {
+        this.settings.setMmapSize(bytes);
+        return this;
+    }
+
+    /**
+     * Sets how often SQLite waits for the writes to reach the disk.
+     *
+     * @param synchronous the synchronous mode
+     * @return the current configuration
+     */
+    public EncryptedSQLStoreConfiguration withSynchronous(SynchronousMode synchronous) {
+        this.settings.setSynchronous(synchronous);
+        return this;
+    }
+
+    /**
+     * Keeps the temporary tables and indexes SQLite builds for sorting and
+     * compound queries in memory instead of in files.
+     *
+     * @param tempStoreInMemory true to keep them in memory
+     * @return the current configuration
+     */
+    public EncryptedSQLStoreConfiguration withTempStoreInMemory(boolean tempStoreInMemory) {
+        this.settings.setTempStoreInMemory(tempStoreInMemory);
+        return this;
+    }
+
+    /**
+     * Keeps the queries of the stores which run longer than the threshold of
+     * the log, with their query plan. Queries are not timed by default.
+     *
+     * @param slowQueryLog the log, may be shared by several stores
+     * @return the current configuration
+     */
+    public EncryptedSQLStoreConfiguration withSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+        return this;
+    }
+
     @Override
     protected <TYPE> Store<TYPE> buildStore(Class<TYPE> klass) {
         if((klass == null) || (passphrase == null) || (context == null)) {
             throw new IllegalStateException("Klass, Passphrase and Context are mandatory");
         }
 
-        return new EncryptedSQLStore<>(klass, context, builder, idGenerator, passphrase);
+        EncryptedSQLStore<TYPE> store = new EncryptedSQLStore<>(klass, context, builder, idGenerator, passphrase);
+        store.setSettings(settings);
+        store.setMetrics(getMetrics());
+        store.setSlowQueryLog(slowQueryLog);
+        return store;
     }
 
 }
@@ -0,0 +1,143 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.sql;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The dictionary of the flattened property names of a store, mapping each
+ * name to the integer id the property rows reference.
+ *
+ * Names are never removed from the dictionary, so an id always maps to the
+ * same name and the cached entries never go stale, even when several stores
+ * share the database. The names added by a save are only cached once its
+ * transaction is committed: a rolled back id could be given to another name
+ * afterwards.
+ */
+final class PropertyNames {
+
+    private final String table;
+    private final Map<String, Long> ids = new ConcurrentHashMap<String, Long>();
+    private final Map<Long, String> names = new ConcurrentHashMap<Long, String>();
+    private final Map<String, Long> pending = new HashMap<String, Long>();
+
+    PropertyNames(String className) {
+        this.table = className + "_name";
+    }
+
+    /**
+     * Caches the whole dictionary.
+     *
+     * @param db the opened database
+     */
+    void load(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("select _ID, NAME from " + table, null);
+        try {
+            while (cursor.moveToNext()) {
+                cache(cursor.getString(1), cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Looks up the id of a name.
+     *
+     * @param db the database
+     * @param name the flattened property name
+     * @return the id or -1 if no property has this name
+     */
+    long find(SQLiteDatabase db, String name) {
+        Long id = ids.get(name);
+        if (id == null) {
+            id = DatabaseUtils.longForQuery(db, "select coalesce((select _ID from " + table + " where NAME = ?), -1)",
+                    new String[]{name});
+            if (id >= 0) {
+                cache(name, id);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Looks up the id of a name, adding the name to the dictionary if it is
+     * new.
+     *
+     * @param db the database, in the write transaction of a save
+     * @param name the flattened property name
+     * @return the id of the name
+     */
+    long intern(SQLiteDatabase db, String name) {
+        Long id = pending.get(name);
+        if (id == null) {
+            id = find(db, name);
+            if (id < 0) {
+                ContentValues values = new ContentValues();
+                values.put("NAME", name);
+                id = db.insertOrThrow(table, null, values);
+                pending.put(name, id);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Looks up the name of an id.
+     *
+     * @param db the database
+     * @param id the id of a name
+     * @return the flattened property name
+     */
+    String nameOf(SQLiteDatabase db, long id) {
+        String name = names.get(id);
+        if (name == null) {
+            name = DatabaseUtils.stringForQuery(db, "select NAME from " + table + " where _ID = ?",
+                    new String[]{String.valueOf(id)});
+            cache(name, id);
+        }
+        return name;
+    }
+
+    /**
+     * Caches the names added by a save transaction if it was committed, or
+     * forgets them.
+     *
+     * @param committed true if the transaction was committed
+     */
+    void endTransaction(boolean committed) {
+        if (committed) {
+            for (Map.Entry<String, Long> name : pending.entrySet()) {
+                cache(name.getKey(), name.getValue());
+            }
+        }
+        pending.clear();
+    }
+
+    private void cache(String name, long id) {
+        ids.put(name, id);
+        names.put(id, name);
+    }
+
+}
@@ -0,0 +1,169 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.sql;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+import org.jboss.aerogear.android.store.util.ClassMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A flattened property name (for instance "address.lines[3].street") parsed
+ * once into the steps needed to put its value back into a JSON tree.
+ */
+final class PropertyPath {
+
+    private final String[] names;
+    private final int[] indexes;
+
+    private PropertyPath(String[] names, int[] indexes) {
+        this.names = names;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Parses a flattened property name. A dot separates a nested object only
+     * when the segment before it names a field of the class holding it,
+     * otherwise the dot is part of the name, like in map keys.
+     *
+     * @param propertyName the flattened name
+     * @param metadata the metadata of the stored class
+     * @return the parsed path
+     */
+    static PropertyPath parse(String propertyName, ClassMetadata metadata) {
+        List<String> names = new ArrayList<String>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        ClassMetadata current = metadata;
+
+        int start = 0;
+        while (true) {
+            int dot = propertyName.indexOf('.', start);
+            String segment = dot < 0 ? propertyName.substring(start) : propertyName.substring(start, dot);
+            int bracket = segment.indexOf('[');
+            int index = bracket < 0 ? -1 : parseIndex(segment, bracket);
+
+            if (dot < 0) {
+                addStep(names, indexes, index < 0 ? segment : segment.substring(0, bracket), index);
+                break;
+            } else if (index >= 0) {
+                String name = segment.substring(0, bracket);
+                addStep(names, indexes, name, index);
+                current = current == null ? null : current.getFieldMetadata(name);
+            } else if (bracket < 0 && current != null && current.hasField(segment)) {
+                addStep(names, indexes, segment, -1);
+                current = current.getFieldMetadata(segment);
+            } else {
+                addStep(names, indexes, propertyName.substring(start), -1);
+                break;
+            }
+            start = dot + 1;
+        }
+
+        int[] indexArray = new int[indexes.size()];
+        for (int i = 0; i < indexArray.length; i++) {
+            indexArray[i] = indexes.get(i);
+        }
+        return new PropertyPath(names.toArray(new String[names.size()]), indexArray);
+    }
+
+    private static void addStep(List<String> names, List<Integer> indexes, String name, int index) {
+        names.add(name);
+        indexes.add(index);
+    }
+
+    /**
+     * Reads the array index of a "name[index]" segment.
+     *
+     * @return the index or -1 if the segment is not an array element
+     */
+    private static int parseIndex(String segment, int bracket) {
+        int end = segment.length() - 1;
+        if (end <= bracket + 1 || segment.charAt(end) != ']') {
+            return -1;
+        }
+        int index = 0;
+        for (int i = bracket + 1; i < end; i++) {
+            char digit = segment.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            index = index * 10 + (digit - '0');
+        }
+        return index;
+    }
+
+    /**
+     * Puts a value at this path of a JSON tree, creating the intermediate
+     * objects and arrays that are missing.
+     *
+     * @param root the object to add the value to
+     * @param value the stored value
+     */
+    void apply(JsonObject root, JsonElement value) {
+        JsonObject current = root;
+        int last = names.length - 1;
+
+        for (int step = 0; step < last; step++) {
+            JsonElement child;
+            if (indexes[step] < 0) {
+                child = current.get(names[step]);
+                if (child == null || !child.isJsonObject()) {
+                    child = new JsonObject();
+                    current.add(names[step], child);
+                }
+            } else {
+                JsonArray array = getArray(current, names[step]);
+                child = getElement(array, indexes[step], true);
+                if (!child.isJsonObject()) {
+                    child = new JsonObject();
+                    array.set(indexes[step], child);
+                }
+            }
+            current = child.getAsJsonObject();
+        }
+
+        if (indexes[last] < 0) {
+            current.add(names[last], value);
+        } else {
+            JsonArray array = getArray(current, names[last]);
+            getElement(array, indexes[last], false);
+            array.set(indexes[last], value);
+        }
+    }
+
+    private static JsonArray getArray(JsonObject object, String name) {
+        JsonElement array = object.get(name);
+        if (array == null || !array.isJsonArray()) {
+            array = new JsonArray();
+            object.add(name, array);
+        }
+        return array.getAsJsonArray();
+    }
+
+    private static JsonElement getElement(JsonArray array, int index, boolean objects) {
+        while (array.size() <= index) {
+            array.add(objects ? new JsonObject() : JsonNull.INSTANCE);
+        }
+        return array.get(index);
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.sql;
+
+import android.util.LruCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least recently used cache of the items read by id, kept as
+ * JSON by {@link SQLStore} so each read converts its own instance.
+ *
+ * Writers invalidate entries once their transaction has ended. A read which
+ * queried the database before an invalidation could still be holding the
+ * previous version of an item, so every invalidation starts a new
+ * generation and an item is only cached if no invalidation happened since
+ * its read started.
+ */
+final class ReadCache<T> {
+
+    private final LruCache<String, T> items;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long generation;
+
+    ReadCache(int maxSize) {
+        this.items = new LruCache<String, T>(maxSize);
+    }
+
+    /**
+     * Looks an item up, counting the hit or the miss.
+     *
+     * @param id the id of the item
+     * @return the cached item or null
+     */
+    T get(String id) {
+        T item = items.get(id);
+        if (item == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return item;
+    }
+
+    /**
+     * Returns the generation to pass to {@link #put(String, Object, long)}
+     * for an item about to be read from the database.
+     *
+     * @return the current generation
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches an item read from the database, unless it was invalidated while
+     * being read.
+     *
+     * @param id the id of the item
+     * @param item the item
+     * @param readGeneration the generation when the read started
+     */
+    synchronized void put(String id, T item, long readGeneration) {
+        if (readGeneration == generation) {
+            items.put(id, item);
+        }
+    }
+
+    synchronized void remove(String id) {
+        generation++;
+        items.remove(id);
+    }
+
+    synchronized void clear() {
+        generation++;
+        items.evictAll();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+}
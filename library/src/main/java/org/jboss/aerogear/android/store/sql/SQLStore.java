@@ -18,10 +18,10 @@ package org.jboss.aerogear.android.store.sql;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.os.AsyncTask;
-import android.text.TextUtils;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 import android.util.Pair;
 
@@ -29,70 +29,129 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 
 import org.jboss.aerogear.android.core.Callback;
 import org.jboss.aerogear.android.core.ReadFilter;
-import org.jboss.aerogear.android.core.reflection.Property;
-import org.jboss.aerogear.android.core.reflection.Scan;
+import org.jboss.aerogear.android.store.OnStoreChangedListener;
 import org.jboss.aerogear.android.store.Store;
+import org.jboss.aerogear.android.store.StoreChange;
+import org.jboss.aerogear.android.store.StoreMetrics;
+import org.jboss.aerogear.android.store.StoreMetrics.Operation;
 import org.jboss.aerogear.android.store.generator.DefaultIdGenerator;
 import org.jboss.aerogear.android.store.generator.IdGenerator;
+import org.jboss.aerogear.android.store.util.ChangeNotifier;
+import org.jboss.aerogear.android.store.util.ClassMetadata;
+import org.jboss.aerogear.android.store.util.StoreExecutors;
 
 import java.io.Serializable;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
 
     private static final String TAG = SQLStore.class.getSimpleName();
     private final Class<T> klass;
     private final String className;
+    private final static String CREATE_ENTITIES_TABLE = "create table if not exists %s_entity "
+            + " ( _ID integer primary key,"
+            + "  ENTITY_ID text not null unique )";
+    private final static String CREATE_ENTITY_DELETE_TRIGGER = "create trigger if not exists %s_entity_delete "
+            + " after delete on %s_entity"
+            + " begin delete from %s_property where PARENT_ID = old._ID; end";
+    private final static String CREATE_NAMES_TABLE = "create table if not exists %s_name "
+            + " ( _ID integer primary key,"
+            + "  NAME text not null unique )";
     private final static String CREATE_PROPERTIES_TABLE = "create table if not exists %s_property "
             + " ( _ID integer primary key autoincrement,"
-            + "  PARENT_ID text not null,"
-            + "  PROPERTY_NAME text not null,"
-            + "  PROPERTY_VALUE text )";
-    private final static String CREATE_PROPERTIES_INDEXES = "create index  if not exists %s_property_name_index "
-            + " ON %s_property (PROPERTY_NAME);"
-            + "create index if not exists %s_property_name_value_index "
-            + " ON %s_property (PROPERTY_NAME, PROPERTY_VALUE) ;"
-            + "create index  if not exists %s_property_parent_index "
-            + " ON %s_property (PARENT_ID);";
+            + "  PARENT_ID integer not null,"
+            + "  NAME_ID integer not null,"
+            + "  PROPERTY_VALUE text,"
+            + "  PROPERTY_NUMBER real,"
+            + "  PROPERTY_TYPE integer )";
+    private final static String CREATE_CLUSTERED_PROPERTIES_TABLE = "create table if not exists %s_property "
+            + " ( PARENT_ID integer not null,"
+            + "  NAME_ID integer not null,"
+            + "  PROPERTY_VALUE text,"
+            + "  PROPERTY_NUMBER real,"
+            + "  PROPERTY_TYPE integer,"
+            + "  primary key (PARENT_ID, NAME_ID) ) without rowid";
+    private final static String CREATE_PROPERTIES_INDEX = "create index if not exists %s_property_%s "
+            + " ON %s_property (%s)%s";
+    private final static String[][] PROPERTIES_INDEXES = {
+            {"name_index", "NAME_ID"},
+            {"name_value_index", "NAME_ID, PROPERTY_VALUE"},
+            {"name_number_index", "NAME_ID, PROPERTY_NUMBER"}
+    };
+    private final static String[] PARENT_INDEX = {"parent_index", "PARENT_ID"};
+    private final static int DATABASE_VERSION = 4;
+    private final static int TYPE_TEXT = 0;
+    private final static int TYPE_NUMBER = 1;
+    private final static int TYPE_BOOLEAN = 2;
+    private final static int MAX_CACHED_PROPERTY_PATHS = 4096;
+    private final static String INSERT_PROPERTY = "insert into %s_property (PROPERTY_VALUE, PROPERTY_NUMBER, PROPERTY_TYPE, NAME_ID, PARENT_ID) values (?,?,?,?,?)";
+    private final static String UPDATE_PROPERTY = "update %s_property set PROPERTY_VALUE = ?, PROPERTY_NUMBER = ?, PROPERTY_TYPE = ? where NAME_ID = ? and PARENT_ID = ?";
+    private final static String DELETE_PROPERTY = "delete from %s_property where PARENT_ID = ? and NAME_ID = ?";
+    private final static String SELECT_ENTITY = "select coalesce((select _ID from %s_entity where ENTITY_ID = ?), -1)";
+    private final static String INSERT_ENTITY = "insert into %s_entity (ENTITY_ID) values (?)";
     private SQLiteDatabase database;
+    private final Map<String, SQLiteStatement> statements = new HashMap<String, SQLiteStatement>();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong rowsSkipped = new AtomicLong();
+    private final ChangeNotifier changeNotifier = new ChangeNotifier();
+    private final Map<String, PropertyPath> propertyPaths = new ConcurrentHashMap<String, PropertyPath>();
     private final Gson gson;
     private final IdGenerator generator;
+    private final PropertyNames propertyNames;
+    private DatabaseSettings settings = new DatabaseSettings();
+    private ReadCache<JsonObject> readCache;
+    private StoreMetrics metrics = StoreMetrics.disabled();
+    private SlowQueryLog slowQueryLog;
+    private Set<String> indexedProperties = Collections.emptySet();
+    private boolean clusteredProperties;
+    private volatile String propertyOrder = "PARENT_ID, _ID";
 
     public SQLStore(Class<T> klass, Context context) {
-        super(context, klass.getSimpleName(), null, 1);
+        super(context, klass.getSimpleName(), null, DATABASE_VERSION);
         this.klass = klass;
         this.className = klass.getSimpleName();
         this.gson = new Gson();
         this.generator = new DefaultIdGenerator();
+        this.propertyNames = new PropertyNames(className);
     }
 
     public SQLStore(Class<T> klass, Context context, GsonBuilder builder, IdGenerator generator) {
-        super(context, klass.getSimpleName(), null, 1);
+        super(context, klass.getSimpleName(), null, DATABASE_VERSION);
         this.klass = klass;
         this.className = klass.getSimpleName();
         this.gson = builder.create();
         this.generator = generator;
+        this.propertyNames = new PropertyNames(className);
     }
 
     public SQLStore(Class<T> klass, Context context, GsonBuilder builder, IdGenerator generator, String databaseName) {
-        super(context, databaseName, null, 1);
+        super(context, databaseName, null, DATABASE_VERSION);
         this.klass = klass;
         this.className = databaseName;
         this.gson = builder.create();
         this.generator = generator;
+        this.propertyNames = new PropertyNames(className);
     }
 
     /**
@@ -102,30 +161,34 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public Collection<T> readAll() {
         ensureOpen();
 
-        String sql = String.format("Select PROPERTY_NAME, PROPERTY_VALUE,PARENT_ID from %s_property", className);
-        Cursor cursor = database.rawQuery(sql, new String[0]);
-        HashMap<String, JsonObject> objects = new HashMap<String, JsonObject>(cursor.getCount());
-        try {
-            while (cursor.moveToNext()) {
-                String id = cursor.getString(2);
-                JsonObject object = objects.get(id);
-                if (object == null) {
-                    object = new JsonObject();
-                    objects.put(id, object);
-                }
-                add(object, cursor.getString(0), cursor.getString(1));
-            }
-            ArrayList<T> data = new ArrayList<T>(cursor.getCount());
-            for (JsonObject object : objects.values()) {
-                data.add(gson.fromJson(object, klass));
-            }
-
-            return data;
+        long start = metrics.start();
+        List<T> items = readAllEntities();
+        metrics.stop(Operation.READ_ALL, start);
+        return items;
+    }
 
+    private List<T> readAllEntities() {
+        String sql = String.format("Select PARENT_ID, NAME_ID, PROPERTY_VALUE, PROPERTY_TYPE from %s_property order by %s", className, propertyOrder);
+        Cursor cursor = query(sql, new String[0]);
+        try {
+            return readEntities(cursor);
         } finally {
             cursor.close();
         }
+    }
 
+    /**
+     * Reads all the items one at a time. Rows are read ordered by PARENT_ID
+     * and each item is converted as soon as its rows are read, so only one
+     * item is being assembled at any time, however large the store is.
+     *
+     * @return an iterator over all the items, to close if not consumed
+     */
+    public StoreIterator<T> iterateAll() {
+        ensureOpen();
+
+        String sql = String.format("Select PARENT_ID, NAME_ID, PROPERTY_VALUE, PROPERTY_TYPE from %s_property order by %s", className, propertyOrder);
+        return new CursorStoreIterator(database.rawQuery(sql, new String[0]));
     }
 
     /**
@@ -135,11 +198,35 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public T read(Serializable id) {
         ensureOpen();
 
-        String sql = String.format("Select PROPERTY_NAME, PROPERTY_VALUE from %s_property where PARENT_ID = ?", className);
+        long start = metrics.start();
+        T item = readItem(id.toString());
+        metrics.stop(Operation.READ, start);
+        return item;
+    }
+
+    /**
+     * Reads an item by id. The cache keeps the JSON of the items rather than
+     * the items, so every read still returns a new instance which the caller
+     * can modify without changing what the next reads return.
+     */
+    private T readItem(String key) {
+        long generation = 0;
+        if (readCache != null) {
+            JsonObject cached = readCache.get(key);
+            if (cached != null) {
+                metrics.recordCacheHit();
+                return gson.fromJson(cached, klass);
+            }
+            metrics.recordCacheMiss();
+            generation = readCache.generation();
+        }
+
+        String sql = String.format("Select NAME_ID, PROPERTY_VALUE, PROPERTY_TYPE from %s_property"
+                + " where PARENT_ID = (select _ID from %s_entity where ENTITY_ID = ?)", className, className);
         String[] bindArgs = new String[1];
-        bindArgs[0] = id.toString();
+        bindArgs[0] = key;
         JsonObject result = new JsonObject();
-        Cursor cursor = database.rawQuery(sql, bindArgs);
+        Cursor cursor = query(sql, bindArgs);
 
         try {
             if (cursor.getCount() == 0) {
@@ -147,59 +234,95 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
             }
 
             while (cursor.moveToNext()) {
-                add(result, cursor.getString(0), cursor.getString(1));
+                add(result, propertyNames.nameOf(database, cursor.getLong(0)), toJson(cursor, 1));
             }
         } finally {
             cursor.close();
         }
 
-        return gson.fromJson(result, klass);
+        T item = gson.fromJson(result, klass);
+        metrics.recordEntitiesRead(1);
+        if (readCache != null) {
+            readCache.put(key, result, generation);
+        }
+        return item;
 
     }
 
     /**
      * {@inheritDoc}
+     *
+     * The whole where clause is compiled into a single statement: every
+     * (property, value) pair selects the matching parents, the selections are
+     * intersected, paged by PARENT_ID and the properties of the surviving
+     * parents are read and assembled in one pass over the cursor.
+     *
+     * A property can also be given an object of operators instead of a value:
+     * <ul>
+     * <li>$gt, $gte, $lt, $lte, for instance {"price": {"$gt": 10, "$lt": 50}}.
+     * Number operands are compared to the numeric column, string operands to
+     * the text values.</li>
+     * <li>$eq and $in, for instance {"name": {"$in": ["name", "name2"]}}.</li>
+     * <li>$ne, matching the items without the value, including those which do
+     * not have the property at all.</li>
+     * </ul>
+     * A where clause may also hold an $or array of where clauses, for instance
+     * {"$or": [{"name": "name"}, {"id": {"$gt": 5}}]}, matching the items
+     * matched by any of them.
      */
     @Override
     public List<T> readWithFilter(ReadFilter filter) {
         ensureOpen();
 
+        long start = metrics.start();
+        List<T> items = selectEntities(filter);
+        metrics.stop(Operation.READ_WITH_FILTER, start);
+        return items;
+    }
+
+    private List<T> selectEntities(ReadFilter filter) {
         if (filter == null) {
             filter = new ReadFilter();
         }
-        String sql = String.format("select PARENT_ID from %s_property where PROPERTY_NAME LIKE ? and PROPERTY_VALUE = ?", className);
-        JsonObject where = (JsonObject) new JsonParser().parse(filter.getWhere().toString());
-        List<Pair<String, String>> queryList = new ArrayList<Pair<String, String>>();
-        Map<String, AtomicInteger> resultCount = new HashMap<String, AtomicInteger>();
-        buildKeyValuePairs(where, queryList, "");
+        List<String> bindArgs = new ArrayList<String>();
+        String matchingParents = selectMatchingParents(filter, bindArgs);
 
-        if (queryList.isEmpty()) {// there is no query
-            return new ArrayList<T>(readAll());
-        } else {
-            for (Pair<String, String> kv : queryList) {
-                String[] bindArgs = new String[]{kv.first, kv.second};
-                Cursor cursor = database.rawQuery(sql, bindArgs);
-                while (cursor.moveToNext()) {
-                    String id = cursor.getString(0);
-                    AtomicInteger count = resultCount.get(id);
-                    if (count == null) {
-                        count = new AtomicInteger(0);
-                        resultCount.put(id, count);
-                    }
-                    count.incrementAndGet();
-                }
-                cursor.close();
-            }
+        if (matchingParents == null) {// there is no query
+            return readAllEntities();
         }
-        List<T> results = new ArrayList<T>();
 
-        for (String id : resultCount.keySet()) {
-            if (resultCount.get(id).get() == queryList.size()) {// There are as many objects as queries which meant a result was returned for every query
-                results.add(read(id));
-            }
+        String sql = String.format("select PARENT_ID, NAME_ID, PROPERTY_VALUE, PROPERTY_TYPE from %s_property"
+                        + " where PARENT_ID in (%s)"
+                        + " order by %s",
+                className, matchingParents, propertyOrder);
+        Cursor cursor = query(sql, bindArgs.toArray(new String[bindArgs.size()]));
+        try {
+            return readEntities(cursor);
+        } finally {
+            cursor.close();
         }
+    }
 
-        return results;
+    /**
+     * Compiles a filter into the select of the PARENT_IDs it matches, in the
+     * order of the pages.
+     *
+     * @return the select or null if the filter has neither conditions nor
+     * paging
+     */
+    private String selectMatchingParents(ReadFilter filter, List<String> bindArgs) {
+        JsonObject where = (JsonObject) new JsonParser().parse(filter.getWhere().toString());
+        List<String> conditions = new ArrayList<String>();
+        buildConditions(where, "", conditions, bindArgs);
+
+        int limit = filter.getLimit() == null ? Integer.MAX_VALUE : filter.getLimit();
+        int offset = filter.getOffset() == null ? 0 : filter.getOffset();
+
+        if (conditions.isEmpty() && limit == Integer.MAX_VALUE && offset == 0) {
+            return null;
+        }
+        return String.format("select PARENT_ID from (%s) order by PARENT_ID limit %d offset %d",
+                intersect(conditions), limit, offset);
     }
 
     /**
@@ -209,13 +332,21 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public void save(T item) {
         ensureOpen();
 
-        this.database.beginTransaction();
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        Serializable id = null;
+        boolean successful = false;
+        DatabaseSettings.beginWrite(this.database);
         try {
-            saveItem(item);
+            id = saveItem(item, changes);
             this.database.setTransactionSuccessful();
+            successful = true;
         } finally {
-            this.database.endTransaction();
+            endSave(successful);
+            invalidate(id);
         }
+        metrics.stop(Operation.SAVE, start);
+        changeNotifier.publish(this, changes);
     }
 
     /**
@@ -225,40 +356,65 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public void save(Collection<T> items) {
         ensureOpen();
 
-        this.database.beginTransaction();
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        List<Serializable> ids = new ArrayList<Serializable>(items.size());
+        boolean successful = false;
+        DatabaseSettings.beginWrite(this.database);
         try {
             for (T item : items) {
-                saveItem(item);
+                ids.add(saveItem(item, changes));
             }
             this.database.setTransactionSuccessful();
+            successful = true;
         } finally {
-            this.database.endTransaction();
+            endSave(successful);
+            for (Serializable id : ids) {
+                invalidate(id);
+            }
         }
+        metrics.stop(Operation.BULK_SAVE, start);
+        changeNotifier.publish(this, changes);
     }
 
-    private void saveItem(T item) {
-        String recordIdFieldName = Scan.recordIdFieldNameIn(item.getClass());
-        Property property = new Property(item.getClass(), recordIdFieldName);
-        Serializable idValue = (Serializable) property.getValue(item);
-
-        if (idValue == null) {
-            idValue = generator.generate();
-            property.setValue(item, idValue);
-        }
+    private Serializable saveItem(T item, StoreChange.Builder changes) {
+        Serializable idValue = ClassMetadata.of(item.getClass()).getOrGenerateId(item, generator);
 
         JsonObject serialized = (JsonObject) gson.toJsonTree(item, klass);
-        database.beginTransaction();
+        Map<String, JsonPrimitive> properties = new LinkedHashMap<String, JsonPrimitive>();
+        flattenElement(serialized, "", properties);
+
+        DatabaseSettings.beginWrite(database);
         try {
-            saveElement(serialized, "", idValue);
+            writeProperties(idValue, properties, changes);
             database.setTransactionSuccessful();
         } finally {
             database.endTransaction();
         }
+        return idValue;
+    }
+
+    /**
+     * Ends the transaction of a save. The property names it added are cached
+     * only if it was committed.
+     */
+    private void endSave(boolean successful) {
+        boolean committed = false;
+        try {
+            this.database.endTransaction();
+            committed = successful;
+        } finally {
+            propertyNames.endTransaction(committed);
+        }
     }
 
-    private void saveElement(JsonElement serialized, String path, Serializable id) {
-        String sql = String.format("insert into %s_property (PROPERTY_NAME, PROPERTY_VALUE, PARENT_ID) values (?,?,?)", className);
+    private void invalidate(Serializable id) {
+        if (readCache != null && id != null) {
+            readCache.remove(id.toString());
+        }
+    }
 
+    private void flattenElement(JsonElement serialized, String path, Map<String, JsonPrimitive> properties) {
         if (serialized.isJsonObject()) {
             Set<Entry<String, JsonElement>> members = ((JsonObject) serialized).entrySet();
             String pathVar = path.isEmpty() ? "" : ".";
@@ -269,24 +425,18 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
 
                 if (jsonValue.isJsonArray()) {
                     JsonArray jsonArray = jsonValue.getAsJsonArray();
+                    String arrayPath = path + pathVar + propertyName + "[";
                     for (int index = 0; index < jsonArray.size(); index++) {
-                        saveElement(jsonArray.get(index), path + pathVar + propertyName + String.format("[%d]", index), id);
+                        flattenElement(jsonArray.get(index), arrayPath + index + "]", properties);
                     }
                 } else {
-                    saveElement(jsonValue, path + pathVar + propertyName, id);
+                    flattenElement(jsonValue, path + pathVar + propertyName, properties);
                 }
             }
         } else if (serialized.isJsonPrimitive()) {
             JsonPrimitive primitive = serialized.getAsJsonPrimitive();
-            if (primitive.isBoolean()) {
-                String value = primitive.getAsBoolean() ? "true" : "false";
-                database.execSQL(sql, new Object[]{path, value, id});
-            } else if (primitive.isNumber()) {
-                Number value = primitive.getAsNumber();
-                database.execSQL(sql, new Object[]{path, value, id});
-            } else if (primitive.isString()) {
-                String value = primitive.getAsString();
-                database.execSQL(sql, new Object[]{path, value, id});
+            if (primitive.isBoolean() || primitive.isNumber() || primitive.isString()) {
+                properties.put(path, primitive);
             } else {
                 throw new IllegalArgumentException(serialized + " isn't a number, boolean, or string");
             }
@@ -295,6 +445,197 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
         }
     }
 
+    /**
+     * Writes the flattened properties of an item, touching only the rows which
+     * differ from the ones already stored for its id: new properties are
+     * inserted, changed ones updated, vanished ones deleted and unchanged ones
+     * skipped. The item is reported as inserted if it had no rows, updated if
+     * any of its rows was written.
+     *
+     * @param idValue the id of the item
+     * @param properties the flattened properties of the item
+     * @param changes the changes of the current transaction
+     */
+    private void writeProperties(Serializable idValue, Map<String, JsonPrimitive> properties, StoreChange.Builder changes) {
+        SQLiteStatement selectEntity = getStatement(SELECT_ENTITY);
+        selectEntity.bindString(1, idValue.toString());
+        long id = selectEntity.simpleQueryForLong();
+        boolean inserted = id < 0;
+        Map<Long, Pair<String, Integer>> storedProperties;
+        if (inserted) {
+            SQLiteStatement insertEntity = getStatement(INSERT_ENTITY);
+            insertEntity.bindString(1, idValue.toString());
+            id = insertEntity.executeInsert();
+            storedProperties = new HashMap<Long, Pair<String, Integer>>();
+        } else {
+            storedProperties = readStoredProperties(id);
+        }
+        long written = rowsWritten.get();
+        long bytes = 0;
+
+        for (Entry<String, JsonPrimitive> property : properties.entrySet()) {
+            long name = propertyNames.intern(database, property.getKey());
+            JsonPrimitive value = property.getValue();
+
+            if (!storedProperties.containsKey(name)) {
+                SQLiteStatement insert = getStatement(INSERT_PROPERTY);
+                bindProperty(insert, name, value, id);
+                insert.executeInsert();
+                rowsWritten.incrementAndGet();
+                bytes += metrics.isEnabled() ? StoreMetrics.utf8Length(value.getAsString()) : 0;
+            } else if (Pair.create(value.getAsString(), typeOf(value)).equals(storedProperties.remove(name))) {
+                rowsSkipped.incrementAndGet();
+            } else {
+                SQLiteStatement update = getStatement(UPDATE_PROPERTY);
+                bindProperty(update, name, value, id);
+                update.executeUpdateDelete();
+                rowsWritten.incrementAndGet();
+                bytes += metrics.isEnabled() ? StoreMetrics.utf8Length(value.getAsString()) : 0;
+            }
+        }
+
+        for (long name : storedProperties.keySet()) {
+            SQLiteStatement delete = getStatement(DELETE_PROPERTY);
+            delete.bindLong(1, id);
+            delete.bindLong(2, name);
+            delete.executeUpdateDelete();
+            rowsWritten.incrementAndGet();
+        }
+
+        metrics.recordWrite(rowsWritten.get() - written, bytes);
+        if (inserted) {
+            changes.inserted(idValue);
+        } else if (rowsWritten.get() != written) {
+            changes.updated(idValue);
+        }
+    }
+
+    /**
+     * Binds a property to the insert or update statement: its text value,
+     * its numeric value when it is a number and its type.
+     */
+    private static void bindProperty(SQLiteStatement statement, long name, JsonPrimitive value, long id) {
+        statement.bindString(1, value.getAsString());
+        if (value.isNumber()) {
+            statement.bindDouble(2, value.getAsDouble());
+        } else {
+            statement.bindNull(2);
+        }
+        statement.bindLong(3, typeOf(value));
+        statement.bindLong(4, name);
+        statement.bindLong(5, id);
+    }
+
+    private static int typeOf(JsonPrimitive value) {
+        if (value.isNumber()) {
+            return TYPE_NUMBER;
+        } else if (value.isBoolean()) {
+            return TYPE_BOOLEAN;
+        }
+        return TYPE_TEXT;
+    }
+
+    /**
+     * Reads the value of a property row back into its JSON type. Rows
+     * written before the type was stored are read as text.
+     *
+     * @param cursor the cursor positioned on the row
+     * @param valueColumn the index of PROPERTY_VALUE, followed by PROPERTY_TYPE
+     * @return the JSON value
+     */
+    private static JsonElement toJson(Cursor cursor, int valueColumn) {
+        String value = cursor.getString(valueColumn);
+        if (value == null) {
+            return JsonNull.INSTANCE;
+        }
+        int type = cursor.isNull(valueColumn + 1) ? TYPE_TEXT : cursor.getInt(valueColumn + 1);
+        switch (type) {
+            case TYPE_NUMBER:
+                return new JsonPrimitive(new BigDecimal(value));
+            case TYPE_BOOLEAN:
+                return new JsonPrimitive(Boolean.valueOf(value));
+            default:
+                return new JsonPrimitive(value);
+        }
+    }
+
+    private Cursor query(String sql, String[] args) {
+        return slowQueryLog == null ? database.rawQuery(sql, args) : slowQueryLog.query(database, sql, args);
+    }
+
+    private long longForQuery(String sql, String[] args) {
+        return slowQueryLog == null ? DatabaseUtils.longForQuery(database, sql, args)
+                : slowQueryLog.longForQuery(database, sql, args);
+    }
+
+    private Map<Long, Pair<String, Integer>> readStoredProperties(long id) {
+        String sql = String.format("select NAME_ID, PROPERTY_VALUE, PROPERTY_TYPE from %s_property where PARENT_ID = ?", className);
+        Cursor cursor = database.rawQuery(sql, new String[]{String.valueOf(id)});
+        try {
+            Map<Long, Pair<String, Integer>> storedProperties = new HashMap<Long, Pair<String, Integer>>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                int type = cursor.isNull(2) ? TYPE_TEXT : cursor.getInt(2);
+                storedProperties.put(cursor.getLong(0), Pair.create(cursor.getString(1), type));
+            }
+            return storedProperties;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the write statement for one of the property SQL templates. It is
+     * compiled once per opened database and re-bound for every row instead of
+     * being parsed again for every property.
+     */
+    private SQLiteStatement getStatement(String template) {
+        SQLiteStatement statement = statements.get(template);
+        if (statement == null) {
+            statement = database.compileStatement(String.format(template, className));
+            statements.put(template, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Returns the number of property rows inserted, updated or deleted by
+     * saves since this store was created.
+     *
+     * @return the number of rows written
+     */
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    /**
+     * Returns the number of property rows left untouched by saves because
+     * their stored value was already up to date.
+     *
+     * @return the number of rows skipped
+     */
+    public long getRowsSkipped() {
+        return rowsSkipped.get();
+    }
+
+    /**
+     * Returns the number of reads by id answered from the read cache.
+     *
+     * @return the number of cache hits, 0 when the cache is disabled
+     */
+    public long getReadCacheHits() {
+        return readCache == null ? 0 : readCache.getHits();
+    }
+
+    /**
+     * Returns the number of reads by id which had to query the database
+     * while the read cache was enabled.
+     *
+     * @return the number of cache misses, 0 when the cache is disabled
+     */
+    public long getReadCacheMisses() {
+        return readCache == null ? 0 : readCache.getMisses();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -302,8 +643,29 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public void reset() {
         ensureOpen();
 
-        String sql = String.format("Delete from %s_property", className);
-        database.execSQL(sql);
+        StoreChange.Builder changes = new StoreChange.Builder();
+        DatabaseSettings.beginWrite(this.database);
+        try {
+            if (changeNotifier.hasListeners()) {
+                Cursor cursor = database.rawQuery(String.format("Select ENTITY_ID from %s_entity", className), null);
+                try {
+                    while (cursor.moveToNext()) {
+                        changes.removed(ClassMetadata.of(klass).idFromText(cursor.getString(0)));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            database.execSQL(String.format("Delete from %s_property", className));
+            database.execSQL(String.format("Delete from %s_entity", className));
+            this.database.setTransactionSuccessful();
+        } finally {
+            this.database.endTransaction();
+            if (readCache != null) {
+                readCache.clear();
+            }
+        }
+        changeNotifier.publish(this, changes);
     }
 
     /**
@@ -313,12 +675,56 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public boolean isEmpty() {
         ensureOpen();
 
-        String sql = String.format("Select count(_ID) from %s_property", className);
+        String sql = String.format("Select 1 from %s_entity limit 1", className);
         Cursor cursor = database.rawQuery(sql, null);
-        cursor.moveToFirst();
-        boolean result = (cursor.getInt(0) == 0);
-        cursor.close();
-        return result;
+        try {
+            return !cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The rows of the entity table are counted.
+     */
+    @Override
+    public long count() {
+        ensureOpen();
+
+        String sql = String.format("Select count(*) from %s_entity", className);
+        return DatabaseUtils.longForQuery(database, sql, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long count(ReadFilter filter) {
+        ensureOpen();
+
+        if (filter == null) {
+            filter = new ReadFilter();
+        }
+        List<String> bindArgs = new ArrayList<String>();
+        String matchingParents = selectMatchingParents(filter, bindArgs);
+        if (matchingParents == null) {
+            return count();
+        }
+        return longForQuery("select count(*) from (" + matchingParents + ")",
+                bindArgs.toArray(new String[bindArgs.size()]));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean exists(Serializable id) {
+        ensureOpen();
+
+        String sql = String.format("Select exists (select 1 from %s_entity where ENTITY_ID = ?)", className);
+        return longForQuery(sql, new String[]{id.toString()}) != 0;
     }
 
     /**
@@ -328,10 +734,101 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
     public void remove(Serializable id) {
         ensureOpen();
 
-        String sql = String.format("Delete from %s_property where PARENT_ID = ?", className);
-        Object[] bindArgs = new Object[1];
-        bindArgs[0] = id;
-        database.execSQL(sql, bindArgs);
+        long start = metrics.start();
+        StoreChange.Builder changes = new StoreChange.Builder();
+        if (database.delete(className + "_entity", "ENTITY_ID = ?", new String[]{id.toString()}) > 0) {
+            changes.removed(id);
+        }
+        invalidate(id);
+        metrics.stop(Operation.REMOVE, start);
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The ids are deleted in one transaction, with one statement per chunk
+     * of 999 ids.
+     */
+    @Override
+    public void remove(Collection<? extends Serializable> ids) {
+        ensureOpen();
+
+        StoreChange.Builder changes = new StoreChange.Builder();
+        DatabaseSettings.beginWrite(this.database);
+        try {
+            BulkDelete.delete(database, className + "_entity", "ENTITY_ID", ids,
+                    changeNotifier.hasListeners() ? changes : null);
+            this.database.setTransactionSuccessful();
+        } finally {
+            this.database.endTransaction();
+            for (Serializable id : ids) {
+                invalidate(id);
+            }
+        }
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The filter is compiled like in {@link #readWithFilter(ReadFilter)}
+     * into the select of the matching ids, which a single statement deletes
+     * the properties of.
+     */
+    @Override
+    public void removeWithFilter(ReadFilter filter) {
+        ensureOpen();
+
+        if (filter == null) {
+            filter = new ReadFilter();
+        }
+        List<String> bindArgs = new ArrayList<String>();
+        String matchingParents = selectMatchingParents(filter, bindArgs);
+        if (matchingParents == null) {
+            matchingParents = intersect(Collections.<String>emptyList());
+        }
+        String[] args = bindArgs.toArray(new String[bindArgs.size()]);
+
+        StoreChange.Builder changes = new StoreChange.Builder();
+        DatabaseSettings.beginWrite(this.database);
+        try {
+            if (changeNotifier.hasListeners()) {
+                Cursor cursor = query(String.format("select ENTITY_ID from %s_entity where _ID in (%s)",
+                        className, matchingParents), args);
+                try {
+                    while (cursor.moveToNext()) {
+                        changes.removed(ClassMetadata.of(klass).idFromText(cursor.getString(0)));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            database.delete(className + "_entity", "_ID in (" + matchingParents + ")", args);
+            this.database.setTransactionSuccessful();
+        } finally {
+            this.database.endTransaction();
+            if (readCache != null) {
+                readCache.clear();
+            }
+        }
+        changeNotifier.publish(this, changes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addOnChangeListener(OnStoreChangedListener listener) {
+        changeNotifier.addListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeOnChangeListener(OnStoreChangedListener listener) {
+        changeNotifier.removeListener(listener);
     }
 
     /**
@@ -339,41 +836,265 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
+        db.execSQL(String.format(CREATE_ENTITIES_TABLE, className));
+        db.execSQL(String.format(CREATE_NAMES_TABLE, className));
         db.execSQL(String.format(CREATE_PROPERTIES_TABLE, className));
-        db.execSQL(String.format(CREATE_PROPERTIES_INDEXES, className, className, className, className, className, className));
+        db.execSQL(String.format(CREATE_ENTITY_DELETE_TRIGGER, className, className, className));
     }
 
     /**
      * {@inheritDoc }
+     *
+     * Version 2 adds the numeric value and the type of the properties. The
+     * numeric value of existing rows is filled in when their text is a plain
+     * number, their type is left empty so they keep being read as text.
+     *
+     * Version 3 moves the ids of the items to an entity table, the property
+     * rows reference its integer rowid instead of repeating the id as text.
+     * The property table is rebuilt, keeping the row ids and so the order of
+     * the properties.
+     *
+     * Version 4 moves the property names to a dictionary table, the property
+     * rows reference the integer id of their name. The property table is
+     * rebuilt the same way.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL(String.format("alter table %s_property add column PROPERTY_NUMBER real", className));
+            db.execSQL(String.format("alter table %s_property add column PROPERTY_TYPE integer", className));
+            db.execSQL(String.format("update %s_property set PROPERTY_NUMBER = cast(PROPERTY_VALUE as real)"
+                    + " where cast(cast(PROPERTY_VALUE as numeric) as text) = PROPERTY_VALUE", className));
+        }
+        if (oldVersion < 3) {
+            db.execSQL(String.format(CREATE_ENTITIES_TABLE, className));
+            db.execSQL(String.format("insert into %s_entity (ENTITY_ID) select PARENT_ID from %s_property"
+                    + " group by PARENT_ID order by min(_ID)", className, className));
+            db.execSQL(String.format("alter table %s_property rename to %s_property_v2", className, className));
+            db.execSQL(String.format("create table %s_property "
+                    + " ( _ID integer primary key autoincrement,"
+                    + "  PARENT_ID integer not null,"
+                    + "  PROPERTY_NAME text not null,"
+                    + "  PROPERTY_VALUE text,"
+                    + "  PROPERTY_NUMBER real,"
+                    + "  PROPERTY_TYPE integer )", className));
+            db.execSQL(String.format("insert into %s_property (_ID, PARENT_ID, PROPERTY_NAME, PROPERTY_VALUE, PROPERTY_NUMBER, PROPERTY_TYPE)"
+                    + " select p._ID, e._ID, p.PROPERTY_NAME, p.PROPERTY_VALUE, p.PROPERTY_NUMBER, p.PROPERTY_TYPE"
+                    + " from %s_property_v2 p join %s_entity e on e.ENTITY_ID = p.PARENT_ID", className, className, className));
+            db.execSQL(String.format("drop table %s_property_v2", className));
+            db.execSQL(String.format(CREATE_ENTITY_DELETE_TRIGGER, className, className, className));
+        }
+        if (oldVersion < 4) {
+            db.execSQL(String.format(CREATE_NAMES_TABLE, className));
+            db.execSQL(String.format("insert into %s_name (NAME) select PROPERTY_NAME from %s_property"
+                    + " group by PROPERTY_NAME order by min(_ID)", className, className));
+            db.execSQL(String.format("drop trigger if exists %s_entity_delete", className));
+            db.execSQL(String.format("alter table %s_property rename to %s_property_v3", className, className));
+            db.execSQL(String.format(CREATE_PROPERTIES_TABLE, className));
+            db.execSQL(String.format("insert into %s_property (_ID, PARENT_ID, NAME_ID, PROPERTY_VALUE, PROPERTY_NUMBER, PROPERTY_TYPE)"
+                    + " select p._ID, p.PARENT_ID, n._ID, p.PROPERTY_VALUE, p.PROPERTY_NUMBER, p.PROPERTY_TYPE"
+                    + " from %s_property_v3 p join %s_name n on n.NAME = p.PROPERTY_NAME", className, className, className));
+            db.execSQL(String.format("drop table %s_property_v3", className));
+            db.execSQL(String.format(CREATE_ENTITY_DELETE_TRIGGER, className, className, className));
+        }
     }
 
-    public void open(final Callback<SQLStore<T>> onReady) {
-        new AsyncTask<Void, Void, Void>() {
-            private Exception exception;
+    /**
+     * Creates the indexes of the properties table and drops the ones left
+     * over from a previous set of indexed properties.
+     *
+     * Without indexed properties every property is indexed by name, value
+     * and number. Otherwise the value and number indexes are partial indexes
+     * holding only the rows of the indexed properties, named after a hash of
+     * their definition. SQLite only supports partial indexes from version
+     * 3.8.0 (API level 21), older versions keep indexing every property.
+     *
+     * The property names are cached, after adding the indexed ones to the
+     * dictionary so that the partial indexes can name their ids.
+     *
+     * The property table is rebuilt when its layout differs from the
+     * configured one, see {@link SQLStoreConfiguration#withClusteredProperties(boolean)}.
+     * The clustered layout needs SQLite 3.8.2 (API level 21), older versions
+     * keep the rowid layout.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        boolean clustered = isClustered(db);
+        if (db.isReadOnly()) {
+            propertyNames.load(db);
+            propertyOrder = clustered ? "PARENT_ID, NAME_ID" : "PARENT_ID, _ID";
+            return;
+        }
 
-            @Override
-            protected Void doInBackground(Void... params) {
-                try {
-                    SQLStore.this.database = getWritableDatabase();
-                } catch (Exception e) {
-                    this.exception = e;
-                    Log.e(TAG, "There was an error loading the database", e);
+        boolean cluster = clusteredProperties && supportsVersion(db, 8, 2);
+        if (cluster != clustered) {
+            rebuildProperties(db, cluster);
+        }
+        propertyOrder = cluster ? "PARENT_ID, NAME_ID" : "PARENT_ID, _ID";
+
+        for (String property : indexedProperties) {
+            db.execSQL(String.format("insert or ignore into %s_name (NAME) values (?)", className), new Object[]{property});
+        }
+        propertyNames.load(db);
+
+        Map<String, String> indexes = new LinkedHashMap<String, String>();
+        if (!cluster) {
+            indexes.put(PARENT_INDEX[0], String.format(CREATE_PROPERTIES_INDEX, className, PARENT_INDEX[0], className, PARENT_INDEX[1], ""));
+        }
+        if (indexedProperties.isEmpty() || !supportsVersion(db, 8, 0)) {
+            for (String[] index : PROPERTIES_INDEXES) {
+                indexes.put(index[0], String.format(CREATE_PROPERTIES_INDEX, className, index[0], className, index[1], ""));
+            }
+        } else {
+            StringBuilder where = new StringBuilder();
+            for (String property : indexedProperties) {
+                where.append(where.length() == 0 ? " where " : " or ");
+                where.append("NAME_ID = ").append(propertyNames.find(db, property));
+            }
+            String suffix = Integer.toHexString(where.toString().hashCode());
+            for (String[] index : PROPERTIES_INDEXES) {
+                if (index[1].contains(",")) {
+                    String name = index[0].replace("_index", "_" + suffix);
+                    indexes.put(name, String.format(CREATE_PROPERTIES_INDEX, className, name, className, index[1], where));
                 }
-                return null;
             }
+        }
+
+        db.beginTransaction();
+        try {
+            String prefix = className + "_property_";
+            Cursor cursor = db.rawQuery("select name from sqlite_master where type = 'index' and tbl_name = ? and sql is not null",
+                    new String[]{className + "_property"});
+            try {
+                while (cursor.moveToNext()) {
+                    String name = cursor.getString(0);
+                    if (!name.startsWith(prefix) || !indexes.containsKey(name.substring(prefix.length()))) {
+                        db.execSQL("drop index if exists \"" + name.replace("\"", "\"\"") + "\"");
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            for (String index : indexes.values()) {
+                db.execSQL(index);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Checks that the SQLite library is at least version 3.minor.patch.
+     */
+    private static boolean supportsVersion(SQLiteDatabase db, int minor, int patch) {
+        String[] version = DatabaseUtils.stringForQuery(db, "select sqlite_version()", null).split("\\.");
+        int[] parts = new int[3];
+        for (int index = 0; index < parts.length && index < version.length; index++) {
+            parts[index] = Integer.parseInt(version[index]);
+        }
+        if (parts[0] != 3) {
+            return parts[0] > 3;
+        }
+        return parts[1] > minor || (parts[1] == minor && parts[2] >= patch);
+    }
+
+    private boolean isClustered(SQLiteDatabase db) {
+        String sql = DatabaseUtils.stringForQuery(db, "select coalesce((select sql from sqlite_master"
+                + " where type = 'table' and name = ?), '')", new String[]{className + "_property"});
+        return sql.toLowerCase(Locale.US).contains("without rowid");
+    }
+
+    /**
+     * Copies the property table into the clustered or the rowid layout. The
+     * rows keep their order, by rowid in the rowid layout and by name id in
+     * the clustered one. The indexes of the previous table are dropped with
+     * it.
+     *
+     * Databases created before version 3 appended new rows each time an
+     * item was saved again, and the upgrades kept them. The clustered layout
+     * is keyed by item and name, so only the last row of each property,
+     * the one reads already returned, is copied into it.
+     */
+    private void rebuildProperties(SQLiteDatabase db, boolean cluster) {
+        db.beginTransaction();
+        try {
+            db.execSQL(String.format("drop trigger if exists %s_entity_delete", className));
+            db.execSQL(String.format("alter table %s_property rename to %s_property_previous", className, className));
+            db.execSQL(String.format(cluster ? CREATE_CLUSTERED_PROPERTIES_TABLE : CREATE_PROPERTIES_TABLE, className));
+            db.execSQL(String.format("insert into %s_property (PARENT_ID, NAME_ID, PROPERTY_VALUE, PROPERTY_NUMBER, PROPERTY_TYPE)"
+                    + " select PARENT_ID, NAME_ID, PROPERTY_VALUE, PROPERTY_NUMBER, PROPERTY_TYPE"
+                    + " from %s_property_previous%s order by %s", className, className,
+                    cluster ? String.format(" where _ID in (select max(_ID) from %s_property_previous"
+                            + " group by PARENT_ID, NAME_ID)", className) : "",
+                    cluster ? "PARENT_ID, _ID" : "PARENT_ID, NAME_ID"));
+            db.execSQL(String.format("drop table %s_property_previous", className));
+            db.execSQL(String.format(CREATE_ENTITY_DELETE_TRIGGER, className, className, className));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        settings.configure(db);
+    }
+
+    void setSettings(DatabaseSettings settings) {
+        this.settings = settings;
+    }
+
+    void setIndexedProperties(Collection<String> indexedProperties) {
+        this.indexedProperties = new TreeSet<String>(indexedProperties);
+    }
+
+    void setClusteredProperties(boolean clusteredProperties) {
+        this.clusteredProperties = clusteredProperties;
+    }
+
+    void setMetrics(StoreMetrics metrics) {
+        this.metrics = metrics;
+    }
 
+    void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    void setReadCacheSize(int size) {
+        this.readCache = size > 0 ? new ReadCache<JsonObject>(size) : null;
+    }
+
+    public void open(final Callback<SQLStore<T>> onReady) {
+        StoreExecutors.openers().execute(new Runnable() {
             @Override
-            protected void onPostExecute(Void result) {
-                if (exception != null) {
-                    onReady.onFailure(exception);
-                } else {
-                    onReady.onSuccess(SQLStore.this);
+            public void run() {
+                Runnable delivery;
+                try {
+                    SQLStore.this.database = getWritableDatabase();
+                    delivery = new Runnable() {
+                        @Override
+                        public void run() {
+                            onReady.onSuccess(SQLStore.this);
+                        }
+                    };
+                } catch (final Exception e) {
+                    Log.e(TAG, "There was an error loading the database", e);
+                    delivery = new Runnable() {
+                        @Override
+                        public void run() {
+                            onReady.onFailure(e);
+                        }
+                    };
                 }
+                StoreExecutors.mainThread().execute(delivery);
             }
-        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, (Void[]) null);
+        });
     }
 
     public void openSync() {
@@ -382,102 +1103,273 @@ public class SQLStore<T> extends SQLiteOpenHelper implements Store<T> {
 
     @Override
     public void close() {
+        for (SQLiteStatement statement : this.statements.values()) {
+            statement.close();
+        }
+        this.statements.clear();
         if (this.database != null && this.database.isOpen()) {
             this.database.close();
         }
     }
 
-    private void add(JsonObject result, String propertyName, String propertyValue) {
-        if (!propertyName.contains(".")) {
-            if (propertyName.contains("[")) {
-                String unArrayPropertyName = propertyName.split("\\[")[0];
-                if (!result.has(unArrayPropertyName)) {
-                    result.add(unArrayPropertyName, new JsonArray());
-                }
-                JsonArray array = result.getAsJsonArray(unArrayPropertyName);
-                array.add(gson.toJsonTree(propertyValue));
-            } else {
-                result.addProperty(propertyName, propertyValue);
-            }
-        } else {
-            String[] names = propertyName.split("\\.", 2);
+    /**
+     * Assembles the entities of a cursor over (PARENT_ID, NAME_ID,
+     * PROPERTY_VALUE) rows ordered by PARENT_ID.
+     *
+     * @param cursor the cursor to consume, it is not closed
+     * @return the entities in cursor order
+     */
+    private List<T> readEntities(Cursor cursor) {
+        List<T> data = new ArrayList<T>();
+        boolean hasRow = cursor.moveToNext();
+        while (hasRow) {
+            data.add(readEntity(cursor));
+            hasRow = !cursor.isAfterLast();
+        }
+        return data;
+    }
 
-            if (names[0].contains("[")) {
-                String key = names[0].split("\\[")[0];
-                Integer index = Integer.parseInt(names[0].split("\\[")[1].split("\\]")[0]);
-                JsonArray subObject = result.getAsJsonArray(key);
+    /**
+     * Assembles the entity of the current cursor row, consuming all its rows.
+     * The cursor is left on the first row of the next entity, or after the
+     * last row.
+     */
+    private T readEntity(Cursor cursor) {
+        long id = cursor.getLong(0);
+        metrics.recordEntitiesRead(1);
+        JsonObject object = new JsonObject();
+        do {
+            add(object, propertyNames.nameOf(database, cursor.getLong(1)), toJson(cursor, 2));
+        } while (cursor.moveToNext() && id == cursor.getLong(0));
+        return gson.fromJson(object, klass);
+    }
 
-                if (subObject == null) {
-                    subObject = new JsonArray();
-                    result.add(key, subObject);
-                }
+    /**
+     * Iterator converting the rows of one entity at a time.
+     */
+    private final class CursorStoreIterator implements StoreIterator<T> {
 
-                if ((index) >= subObject.size()) {
-                    for (int i = subObject.size(); i < (index + 1); i++) {
-                        subObject.add(new JsonObject());
-                    }
-                }
+        private final Cursor cursor;
+        private boolean hasRow;
 
-                JsonObject arrayItem = subObject.get(index).getAsJsonObject();
+        private CursorStoreIterator(Cursor cursor) {
+            this.cursor = cursor;
+            this.hasRow = cursor.moveToNext();
+            if (!hasRow) {
+                close();
+            }
+        }
 
-                add(arrayItem, names[1], propertyValue);
+        @Override
+        public boolean hasNext() {
+            return hasRow;
+        }
 
-            } else {
+        @Override
+        public T next() {
+            if (!hasRow) {
+                throw new NoSuchElementException();
+            }
+            T item = readEntity(cursor);
+            hasRow = !cursor.isAfterLast();
+            if (!hasRow) {
+                close();
+            }
+            return item;
+        }
 
-                JsonObject subObject = (JsonObject) result.get(names[0]);
-                if (hasField(names[0])) {
-                    if (subObject == null) {
-                        subObject = new JsonObject();
-                        result.add(names[0], subObject);
-                    }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
 
-                    add(subObject, names[1], propertyValue);
-                } else {
-                    result.addProperty(TextUtils.join(".", names), propertyValue);
-                }
-            }
+        @Override
+        public void close() {
+            hasRow = false;
+            cursor.close();
         }
+
     }
 
-    private boolean hasField(String name) {
-        try {
-            klass.getDeclaredField(name);
-            return true;
-        } catch (NoSuchFieldException e) {
-            return false;
+    private void add(JsonObject result, String propertyName, JsonElement propertyValue) {
+        PropertyPath path = propertyPaths.get(propertyName);
+        if (path == null) {
+            path = PropertyPath.parse(propertyName, ClassMetadata.of(klass));
+            if (propertyPaths.size() < MAX_CACHED_PROPERTY_PATHS) {
+                propertyPaths.put(propertyName, path);
+            }
         }
+        path.apply(result, propertyValue);
     }
 
-    private void buildKeyValuePairs(JsonObject where, List<Pair<String, String>> keyValues, String parentPath) {
+    /**
+     * Compiles a where clause into one select of matching PARENT_IDs per
+     * property.
+     */
+    private void buildConditions(JsonObject where, String parentPath, List<String> conditions, List<String> bindArgs) {
         Set<Entry<String, JsonElement>> keys = where.entrySet();
         String pathVar = parentPath.isEmpty() ? "" : ".";// Set a dot if parent path is not empty
         for (Entry<String, JsonElement> entry : keys) {
             String key = entry.getKey();
             String path = parentPath + pathVar + key;
             JsonElement jsonValue = entry.getValue();
-            if (jsonValue.isJsonObject()) {
-                buildKeyValuePairs((JsonObject) jsonValue, keyValues, path);
+            if ("$or".equals(key)) {
+                conditions.add(buildOrCondition(jsonValue, parentPath, bindArgs));
+            } else if (jsonValue.isJsonObject() && isOperatorObject((JsonObject) jsonValue)) {
+                buildOperatorConditions(path, (JsonObject) jsonValue, conditions, bindArgs);
+            } else if (jsonValue.isJsonObject()) {
+                buildConditions((JsonObject) jsonValue, path, conditions, bindArgs);
             } else if (jsonValue.isJsonPrimitive()) {
-                JsonPrimitive primitive = jsonValue.getAsJsonPrimitive();
-                if (primitive.isBoolean()) {
-                    String value = primitive.getAsBoolean() ? "true" : "false";
-                    keyValues.add(new Pair<String, String>(path, value));
-                } else if (primitive.isNumber()) {
-                    Number value = primitive.getAsNumber();
-                    keyValues.add(new Pair<String, String>(path, value.toString()));
-                } else if (primitive.isString()) {
-                    String value = primitive.getAsString();
-                    keyValues.add(new Pair<String, String>(path, value));
-                } else {
-                    throw new IllegalArgumentException(jsonValue + " isn't a number, boolean, or string");
-                }
-
+                conditions.add(selectParents(path, bindArgs) + " and PROPERTY_VALUE = ?");
+                bindArgs.add(toText(jsonValue));
             } else {
                 throw new IllegalArgumentException(jsonValue + " isn't a JsonPrimitive");
             }
         }
     }
 
+    private static boolean isOperatorObject(JsonObject object) {
+        for (Entry<String, JsonElement> entry : object.entrySet()) {
+            return entry.getKey().startsWith("$");
+        }
+        return false;
+    }
+
+    /**
+     * Compiles the operators of a property. The range operators go into a
+     * single select, so that they are evaluated together as one index range
+     * scan.
+     */
+    private void buildOperatorConditions(String path, JsonObject operators, List<String> conditions, List<String> bindArgs) {
+        StringBuilder range = null;
+        List<String> rangeArgs = new ArrayList<String>();
+
+        for (Entry<String, JsonElement> entry : operators.entrySet()) {
+            String operator = entry.getKey();
+            JsonElement operand = entry.getValue();
+            switch (operator) {
+                case "$eq":
+                    conditions.add(selectParents(path, bindArgs) + " and PROPERTY_VALUE = ?");
+                    bindArgs.add(toText(operand));
+                    break;
+                case "$ne":
+                    conditions.add("select _ID as PARENT_ID from " + className + "_entity where _ID not in ("
+                            + selectParents(path, bindArgs) + " and PROPERTY_VALUE = ?)");
+                    bindArgs.add(toText(operand));
+                    break;
+                case "$in":
+                    conditions.add(buildInCondition(path, operand, bindArgs));
+                    break;
+                default:
+                    if (range == null) {
+                        range = new StringBuilder(selectParents(path, rangeArgs));
+                    }
+                    if (!operand.isJsonPrimitive() || operand.getAsJsonPrimitive().isBoolean()) {
+                        throw new IllegalArgumentException(operand + " isn't a number or string");
+                    }
+                    String column = operand.getAsJsonPrimitive().isNumber() ? "PROPERTY_NUMBER" : "PROPERTY_VALUE";
+                    range.append(" and ").append(column).append(' ').append(toSQLOperator(operator)).append(" ?");
+                    rangeArgs.add(operand.getAsString());
+            }
+        }
+
+        if (range != null) {
+            conditions.add(range.toString());
+            bindArgs.addAll(rangeArgs);
+        }
+    }
+
+    private String buildInCondition(String path, JsonElement operand, List<String> bindArgs) {
+        if (!operand.isJsonArray()) {
+            throw new IllegalArgumentException(operand + " isn't a JsonArray");
+        }
+        StringBuilder condition = new StringBuilder(selectParents(path, bindArgs)).append(" and PROPERTY_VALUE in (");
+        JsonArray values = operand.getAsJsonArray();
+        for (int index = 0; index < values.size(); index++) {
+            condition.append(index == 0 ? "?" : ",?");
+            bindArgs.add(toText(values.get(index)));
+        }
+        return condition.append(')').toString();
+    }
+
+    /**
+     * Compiles an $or array of where clauses into the union of their
+     * matching parents.
+     */
+    private String buildOrCondition(JsonElement operand, String parentPath, List<String> bindArgs) {
+        if (!operand.isJsonArray() || operand.getAsJsonArray().size() == 0) {
+            throw new IllegalArgumentException(operand + " isn't a non empty JsonArray");
+        }
+        StringBuilder condition = new StringBuilder();
+        for (JsonElement clause : operand.getAsJsonArray()) {
+            if (!clause.isJsonObject()) {
+                throw new IllegalArgumentException(clause + " isn't a JsonObject");
+            }
+            List<String> clauseConditions = new ArrayList<String>();
+            buildConditions((JsonObject) clause, parentPath, clauseConditions, bindArgs);
+            if (condition.length() > 0) {
+                condition.append(" union ");
+            }
+            condition.append("select PARENT_ID from (").append(intersect(clauseConditions)).append(')');
+        }
+        return "select PARENT_ID from (" + condition + ")";
+    }
+
+    /**
+     * Joins selects of PARENT_IDs into the select of the parents matched by
+     * all of them, or of all the parents if there is none.
+     */
+    private String intersect(List<String> conditions) {
+        if (conditions.isEmpty()) {
+            return "select _ID as PARENT_ID from " + className + "_entity";
+        }
+        StringBuilder intersection = new StringBuilder();
+        for (int index = 0; index < conditions.size(); index++) {
+            if (index > 0) {
+                intersection.append(" intersect ");
+            }
+            intersection.append(conditions.get(index));
+        }
+        return intersection.toString();
+    }
+
+    private static String toText(JsonElement value) {
+        if (!value.isJsonPrimitive()) {
+            throw new IllegalArgumentException(value + " isn't a number, boolean, or string");
+        }
+        return value.getAsString();
+    }
+
+    private static String toSQLOperator(String operator) {
+        switch (operator) {
+            case "$gt":
+                return ">";
+            case "$gte":
+                return ">=";
+            case "$lt":
+                return "<";
+            case "$lte":
+                return "<=";
+            default:
+                throw new IllegalArgumentException(operator + " isn't a supported operator");
+        }
+    }
+
+    /**
+     * Starts the select of the parents of a property. The id of the name is
+     * written as a literal, SQLite only uses a partial index when the query
+     * names one of its properties. A name which was never stored has no id
+     * and matches no row.
+     */
+    private String selectParents(String path, List<String> bindArgs) {
+        String select = "select PARENT_ID from " + className + "_property where NAME_ID ";
+        if (path.contains("%")) {
+            bindArgs.add(path);
+            return select + "in (select _ID from " + className + "_name where NAME LIKE ?)";
+        }
+        return select + "= " + propertyNames.find(database, path);
+    }
+
     private boolean isOpen() {
         return this.database != null;
     }
@@ -26,12 +26,37 @@ import org.jboss.aerogear.android.store.StoreConfiguration;
 import org.jboss.aerogear.android.store.generator.DefaultIdGenerator;
 import org.jboss.aerogear.android.store.generator.IdGenerator;
 
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 public final class SQLStoreConfiguration extends StoreConfiguration<SQLStoreConfiguration>
         implements Config<SQLStoreConfiguration> {
 
+    /**
+     * How the items of a SQL store are laid out in the database.
+     */
+    public enum StorageMode {
+        /**
+         * One row per flattened property of an item, see {@link SQLStore}.
+         */
+        PROPERTY_ROWS,
+        /**
+         * One row per item holding its JSON document, see
+         * {@link DocumentSQLStore}.
+         */
+        DOCUMENT
+    }
+
     private Context context;
     private GsonBuilder builder = new GsonBuilder();
     private IdGenerator idGenerator = new DefaultIdGenerator();
+    private StorageMode storageMode = StorageMode.PROPERTY_ROWS;
+    private Set<String> indexedProperties = new LinkedHashSet<String>();
+    private final DatabaseSettings settings = new DatabaseSettings();
+    private int readCacheSize;
+    private boolean clusteredProperties;
+    private SlowQueryLog slowQueryLog;
 
     public SQLStoreConfiguration withContext(Context context) {
         this.context = context;
@@ -48,13 +73,187 @@ public final class SQLStoreConfiguration extends StoreConfiguration<SQLStoreConf
         return this;
     }
 
+    public SQLStoreConfiguration withStorageMode(StorageMode storageMode) {
+        this.storageMode = storageMode;
+        return this;
+    }
+
+    /**
+     * Declares the property paths (for instance "name" or "address.city")
+     * which are queried with readWithFilter. In the document storage mode
+     * they are stored in indexed columns. In the property rows storage mode
+     * only their rows are indexed by value, the other properties can still
+     * be filtered on but by scanning their rows, which makes saves cheaper
+     * and the database smaller. By default every property is indexed.
+     *
+     * @param propertyPaths the paths of the indexed properties
+     * @return the current configuration
+     */
+    public SQLStoreConfiguration withIndexedProperties(String... propertyPaths) {
+        this.indexedProperties.addAll(Arrays.asList(propertyPaths));
+        return this;
+    }
+
+    /**
+     * Stores the property rows of each item next to each other, in a table
+     * without rowid keyed by item and property name, so reading an item by
+     * id reads a few adjacent pages instead of looking its rows up through an
+     * index. Saves cost a little more as rows are inserted in the middle of
+     * the table. An existing database is rebuilt with the new layout the
+     * first time it is opened with it. It needs SQLite 3.8.2 (API level 21),
+     * older versions keep the default layout. Only the property rows storage
+     * mode has this layout.
+     *
+     * @param clusteredProperties true to cluster the rows by item
+     * @return the current configuration
+     */
+    public SQLStoreConfiguration withClusteredProperties(boolean clusteredProperties) {
+        this.clusteredProperties = clusteredProperties;
+        return this;
+    }
+
+    /**
+     * Opens the database with write-ahead logging, letting reads run on their
+     * own connections while a save transaction is in progress instead of
+     * waiting for it to commit. The platform then sets the synchronous mode
+     * of the database, and the other pragmas are only applied to the
+     * connection used for writes.
+     *
+     * @param writeAheadLogging true to enable write-ahead logging
+     * @return the current configuration
+     */
+    public SQLStoreConfiguration withWriteAheadLogging(boolean writeAheadLogging) {
+        this.settings.setWriteAheadLogging(writeAheadLogging);
+        return this;
+    }
+
+    /**
+     * Sets how many pages the write-ahead log grows to before it is
+     * checkpointed into the database at the end of a save. Zero or less turns
+     * automatic checkpoints off. It is ignored without write-ahead logging.
+     *
+     * @param pages the checkpoint threshold in pages
+     * @return the current configuration
+     */
+    public SQLStoreConfiguration withWalAutoCheckpoint(int pages) {
+        this.settings.setWalAutoCheckpoint(pages);
+        return this;
+    }
+
+    /**
+     * Sets the size of the database pages in bytes, a power of two between
+     * 512 and 65536. An existing database is rebuilt with the new page size
+     * the first time it is opened with it.
+     *
+     * @param bytes the page size
+     * @return the current configuration
+     * @throws IllegalArgumentException if the size is out of range or not a
+     * power of two
+     */
+    public SQLStoreConfiguration withPageSize(int bytes) {
+        this.settings.setPageSize(bytes);
+        return this;
+    }
+
+    /**
+     * Sets how much of the database is cached in memory, in pages or, when
+     * negative, in kibibytes.
+     *
+     * @param size the cache size
+     * @return the current configuration
+     */
+    public SQLStoreConfiguration withCacheSize(int size) {
+        this.settings.setCacheSize(size);
+        return this;
+    }
+
+    /**
+     * Sets how many bytes of the database file are memory-mapped for reads.
+     * Zero turns memory-mapped reads off. It is ignored by SQLite versions
+     * older than 3.7.17.
+     *
+     * @param bytes the memory-mapped size
+     * @return the current configuration
+     */
+    public SQLStoreConfiguration withMmapSize(long bytes) {
+        this.settings.setMmapSize(bytes);
+        return this;
+    }
+
+    /**
+     * Sets how often SQLite waits for the writes to reach the disk.
+     *
+     * @param synchronous the synchronous mode
+     * @return the current configuration
+     */
+    public SQLStoreConfiguration withSynchronous(SynchronousMode synchronous) {
+        this.settings.setSynchronous(synchronous);
+        return this;
+    }
+
+    /**
+     * Keeps the temporary tables and indexes SQLite builds for sorting and
+     * compound queries in memory instead of in files.
+     *
+     * @param tempStoreInMemory true to keep them in memory
+     * @return the current configuration
+     */
+    public SQLStoreConfiguration withTempStoreInMemory(boolean tempStoreInMemory) {
+        this.settings.setTempStoreInMemory(tempStoreInMemory);
+        return this;
+    }
+
+    /**
+     * Keeps the JSON of up to the given number of items read by id in
+     * memory, so reading them again skips the query. Every read still
+     * converts the JSON into a new instance, so modifying an item read from
+     * the store never changes what later reads return. Saves, removals and
+     * resets made through the store invalidate the items they change. Only
+     * the property rows storage mode has a read cache, it is disabled by
+     * default.
+     *
+     * @param items the maximum number of cached items, 0 to disable the cache
+     * @return the current configuration
+     */
+    public SQLStoreConfiguration withReadCacheSize(int items) {
+        this.readCacheSize = items;
+        return this;
+    }
+
+    /**
+     * Keeps the queries of the stores which run longer than the threshold of
+     * the log, with their query plan. Queries are not timed by default.
+     *
+     * @param slowQueryLog the log, may be shared by several stores
+     * @return the current configuration
+     */
+    public SQLStoreConfiguration withSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+        return this;
+    }
+
     @Override
     protected <TYPE> Store<TYPE> buildStore(Class<TYPE> klass) {
         if((klass == null) || (context == null)) {
             throw new IllegalStateException("Klass and Context are mandatory");
         }
 
-        return new SQLStore<>(klass, context, builder, idGenerator);
+        if (storageMode == StorageMode.DOCUMENT) {
+            DocumentSQLStore<TYPE> store = new DocumentSQLStore<>(klass, context, builder, idGenerator, indexedProperties);
+            store.setSettings(settings);
+            store.setMetrics(getMetrics());
+            store.setSlowQueryLog(slowQueryLog);
+            return store;
+        }
+
+        SQLStore<TYPE> store = new SQLStore<>(klass, context, builder, idGenerator);
+        store.setSettings(settings);
+        store.setIndexedProperties(indexedProperties);
+        store.setClusteredProperties(clusteredProperties);
+        store.setReadCacheSize(readCacheSize);
+        store.setMetrics(getMetrics());
+        store.setSlowQueryLog(slowQueryLog);
+        return store;
     }
 
 }
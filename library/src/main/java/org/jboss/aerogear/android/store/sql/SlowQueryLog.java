@@ -0,0 +1,263 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.sql;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the queries of the SQL stores which ran longer than a threshold,
+ * with their query plan, see
+ * {@link SQLStoreConfiguration#withSlowQueryLog(SlowQueryLog)} and
+ * {@link EncryptedSQLStoreConfiguration#withSlowQueryLog(SlowQueryLog)}. A
+ * single log can be shared by several stores.
+ *
+ * A query is timed until its whole result is counted, which is when SQLite
+ * has run it. The plan of a slow query is captured right after it, with
+ * EXPLAIN QUERY PLAN and the same arguments, showing which indexes were
+ * used. Only the shape of the arguments is kept, never their values, as they
+ * may hold the stored data.
+ *
+ * The latest entries are kept in memory, the oldest being dropped once the
+ * capacity is reached, and every entry is also logged as a warning.
+ */
+public final class SlowQueryLog {
+
+    private static final String TAG = SlowQueryLog.class.getSimpleName();
+
+    private final long thresholdNanos;
+    private final int capacity;
+    private final ArrayDeque<Entry> entries;
+
+    /**
+     * @param thresholdMillis the duration from which a query is logged, 0 to
+     * log all the queries
+     * @param capacity the maximum number of kept entries
+     */
+    public SlowQueryLog(long thresholdMillis, int capacity) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("thresholdMillis may not be negative");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.capacity = capacity;
+        this.entries = new ArrayDeque<Entry>(capacity);
+    }
+
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns a copy of the kept entries.
+     *
+     * @return the entries, the oldest first
+     */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<Entry>(entries);
+    }
+
+    /**
+     * Drops all the kept entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Formats the kept entries, to be displayed or shared from a debug
+     * screen.
+     *
+     * @return the entries, the oldest first, separated by blank lines
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        for (Entry entry : getEntries()) {
+            if (dump.length() > 0) {
+                dump.append('\n');
+            }
+            dump.append(entry).append('\n');
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Runs a query, logging it if it is slow.
+     *
+     * @param db the database
+     * @param sql the query
+     * @param args the arguments of the query, may be null
+     * @return the cursor, its result already counted
+     */
+    Cursor query(SQLiteDatabase db, String sql, String[] args) {
+        long start = System.nanoTime();
+        Cursor cursor = db.rawQuery(sql, args);
+        try {
+            cursor.getCount();
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+        check(db, sql, args, start);
+        return cursor;
+    }
+
+    /**
+     * Runs a query returning a single number, logging it if it is slow.
+     *
+     * @param db the database
+     * @param sql the query
+     * @param args the arguments of the query, may be null
+     * @return the number
+     */
+    long longForQuery(SQLiteDatabase db, String sql, String[] args) {
+        long start = System.nanoTime();
+        long value = DatabaseUtils.longForQuery(db, sql, args);
+        check(db, sql, args, start);
+        return value;
+    }
+
+    private void check(SQLiteDatabase db, String sql, String[] args, long start) {
+        long duration = System.nanoTime() - start;
+        if (duration < thresholdNanos) {
+            return;
+        }
+
+        Entry entry = new Entry(System.currentTimeMillis(), duration, sql, shapesOf(args), explain(db, sql, args));
+        Log.w(TAG, entry.toString());
+        synchronized (this) {
+            if (entries.size() == capacity) {
+                entries.removeFirst();
+            }
+            entries.addLast(entry);
+        }
+    }
+
+    private static List<String> shapesOf(String[] args) {
+        if (args == null) {
+            return Collections.emptyList();
+        }
+        List<String> shapes = new ArrayList<String>(args.length);
+        for (String arg : args) {
+            shapes.add(arg == null ? "null" : "text[" + arg.length() + "]");
+        }
+        return Collections.unmodifiableList(shapes);
+    }
+
+    private static List<String> explain(SQLiteDatabase db, String sql, String[] args) {
+        List<String> plan = new ArrayList<String>();
+        try {
+            Cursor cursor = db.rawQuery("explain query plan " + sql, args);
+            try {
+                int detail = cursor.getColumnIndexOrThrow("detail");
+                while (cursor.moveToNext()) {
+                    plan.add(cursor.getString(detail));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not explain " + sql, e);
+            plan.add("unavailable: " + e.getMessage());
+        }
+        return Collections.unmodifiableList(plan);
+    }
+
+    /**
+     * A slow query.
+     */
+    public static final class Entry {
+
+        private final long timestamp;
+        private final long durationNanos;
+        private final String sql;
+        private final List<String> argumentShapes;
+        private final List<String> plan;
+
+        Entry(long timestamp, long durationNanos, String sql, List<String> argumentShapes, List<String> plan) {
+            this.timestamp = timestamp;
+            this.durationNanos = durationNanos;
+            this.sql = sql;
+            this.argumentShapes = argumentShapes;
+            this.plan = plan;
+        }
+
+        /**
+         * @return when the query completed, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * Returns the shapes of the arguments, "null" or "text[length]", the
+         * type the stores bind their arguments as.
+         *
+         * @return the shapes, in the order of the arguments
+         */
+        public List<String> getArgumentShapes() {
+            return argumentShapes;
+        }
+
+        /**
+         * Returns the details of the EXPLAIN QUERY PLAN rows, for instance
+         * "SEARCH TABLE Data_property USING INDEX parent_index (PARENT_ID=?)".
+         *
+         * @return the plan, one step per line
+         */
+        public List<String> getPlan() {
+            return plan;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder string = new StringBuilder();
+            string.append(new Date(timestamp)).append(' ')
+                    .append(TimeUnit.NANOSECONDS.toMicros(durationNanos)).append("us\n")
+                    .append(sql).append('\n')
+                    .append("arguments: ").append(argumentShapes);
+            for (String step : plan) {
+                string.append("\n  ").append(step);
+            }
+            return string.toString();
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.sql;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterates over the items of a store while they are read from an open
+ * database cursor. It is closed once the last item is returned, iterations
+ * stopped before that must call {@link #close()}.
+ */
+public interface StoreIterator<T> extends Iterator<T>, Closeable {
+
+    /**
+     * Releases the cursor backing this iterator.
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,37 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.sql;
+
+/**
+ * How often SQLite waits for writes to reach the disk, see the synchronous
+ * pragma of SQLite.
+ */
+public enum SynchronousMode {
+    /**
+     * Never waits. A crash of the device may corrupt the database, which fits
+     * stores that only cache data available elsewhere.
+     */
+    OFF,
+    /**
+     * Waits at the most critical moments only.
+     */
+    NORMAL,
+    /**
+     * Waits for every transaction to reach the disk.
+     */
+    FULL
+}
@@ -0,0 +1,68 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.util;
+
+import org.jboss.aerogear.android.store.OnStoreChangedListener;
+import org.jboss.aerogear.android.store.Store;
+import org.jboss.aerogear.android.store.StoreChange;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The change listeners of a store.
+ */
+public final class ChangeNotifier {
+
+    private final List<OnStoreChangedListener> listeners = new CopyOnWriteArrayList<OnStoreChangedListener>();
+
+    public void addListener(OnStoreChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(OnStoreChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tells if anybody listens, to skip collecting changes which are costly
+     * to find out.
+     *
+     * @return true if there is at least one listener
+     */
+    public boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Calls the listeners, on the current thread, if the changes are not
+     * empty. It must be called once the changes are committed.
+     *
+     * @param store the changed store
+     * @param changes the changes of the operation
+     */
+    public void publish(Store<?> store, StoreChange.Builder changes) {
+        if (changes.isEmpty() || listeners.isEmpty()) {
+            return;
+        }
+        StoreChange change = changes.build();
+        for (OnStoreChangedListener listener : listeners) {
+            listener.onStoreChanged(store, change);
+        }
+    }
+
+}
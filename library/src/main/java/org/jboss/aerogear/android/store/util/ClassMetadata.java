@@ -0,0 +1,200 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.util;
+
+import org.jboss.aerogear.android.core.reflection.Property;
+import org.jboss.aerogear.android.core.reflection.Scan;
+import org.jboss.aerogear.android.store.generator.IdGenerator;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reflection data of a stored class, looked up once and shared by all the
+ * stores: its fields, the types nested in them and the accessors of its id
+ * and filtered properties.
+ */
+public final class ClassMetadata {
+
+    private static final Map<Class<?>, ClassMetadata> CACHE = new ConcurrentHashMap<Class<?>, ClassMetadata>();
+
+    private final Class<?> klass;
+    private final Map<String, Type> fields = new HashMap<String, Type>();
+    private final Map<String, Property> properties = new ConcurrentHashMap<String, Property>();
+    private volatile Property idProperty;
+    private volatile Class<?> idType;
+
+    private ClassMetadata(Class<?> klass) {
+        this.klass = klass;
+        for (Class<?> type = klass; type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (!fields.containsKey(field.getName())) {
+                    fields.put(field.getName(), field.getGenericType());
+                }
+            }
+        }
+    }
+
+    public static ClassMetadata of(Class<?> klass) {
+        ClassMetadata metadata = CACHE.get(klass);
+        if (metadata == null) {
+            metadata = new ClassMetadata(klass);
+            CACHE.put(klass, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Checks if the class, or one of its super classes, declares a field.
+     *
+     * @param name the name of the field
+     * @return true if the field exists
+     */
+    public boolean hasField(String name) {
+        return fields.containsKey(name);
+    }
+
+    /**
+     * Returns the metadata of the objects held by a field: the field type
+     * itself, or the element type of an array or collection field.
+     *
+     * @param name the name of the field
+     * @return the metadata or null if the field does not exist or does not
+     * hold objects with fields of their own (primitives, platform types,
+     * maps, unresolved generics)
+     */
+    public ClassMetadata getFieldMetadata(String name) {
+        Class<?> type = objectType(fields.get(name));
+        if (type == null) {
+            return null;
+        }
+        return of(type);
+    }
+
+    /**
+     * Returns a cached accessor for a property of the class.
+     *
+     * @param name the name of the property
+     * @return the property accessor
+     */
+    public Property getProperty(String name) {
+        Property property = properties.get(name);
+        if (property == null) {
+            property = new Property(klass, name);
+            properties.put(name, property);
+        }
+        return property;
+    }
+
+    /**
+     * Reads the id of an item, generating and setting a new one if the item
+     * has none yet.
+     *
+     * @param item an instance of the class
+     * @param generator the generator of new ids
+     * @return the id of the item
+     */
+    public Serializable getOrGenerateId(Object item, IdGenerator generator) {
+        if (idProperty == null) {
+            idProperty = new Property(klass, Scan.recordIdFieldNameIn(klass));
+        }
+
+        Serializable idValue = (Serializable) idProperty.getValue(item);
+        if (idValue == null) {
+            idValue = generator.generate();
+            idProperty.setValue(item, idValue);
+        }
+        return idValue;
+    }
+
+    /**
+     * Converts the text form of an id, as the SQL stores keep it, back to
+     * the type of the id field, so that the ids read from a database are
+     * equal to the ones the items were saved with. Ids of other types than
+     * strings, numbers and UUIDs are returned as text.
+     *
+     * @param text the text form of an id
+     * @return the id
+     */
+    public Serializable idFromText(String text) {
+        if (idType == null) {
+            Type type = fields.get(Scan.recordIdFieldNameIn(klass));
+            idType = type instanceof Class ? (Class<?>) type : String.class;
+        }
+
+        if (idType == Integer.class || idType == int.class) {
+            return Integer.valueOf(text);
+        } else if (idType == Long.class || idType == long.class) {
+            return Long.valueOf(text);
+        } else if (idType == Short.class || idType == short.class) {
+            return Short.valueOf(text);
+        } else if (idType == Byte.class || idType == byte.class) {
+            return Byte.valueOf(text);
+        } else if (idType == Double.class || idType == double.class) {
+            return Double.valueOf(text);
+        } else if (idType == Float.class || idType == float.class) {
+            return Float.valueOf(text);
+        } else if (idType == BigInteger.class) {
+            return new BigInteger(text);
+        } else if (idType == BigDecimal.class) {
+            return new BigDecimal(text);
+        } else if (idType == UUID.class) {
+            return UUID.fromString(text);
+        }
+        return text;
+    }
+
+    private static Class<?> objectType(Type type) {
+        if (type instanceof Class) {
+            Class<?> klass = (Class<?>) type;
+            if (klass.isArray()) {
+                return objectType(klass.getComponentType());
+            }
+            if (klass.isPrimitive() || klass.isEnum() || Collection.class.isAssignableFrom(klass)
+                    || Map.class.isAssignableFrom(klass) || isPlatformClass(klass)) {
+                return null;
+            }
+            return klass;
+        } else if (type instanceof GenericArrayType) {
+            return objectType(((GenericArrayType) type).getGenericComponentType());
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Type rawType = parameterizedType.getRawType();
+            if (rawType instanceof Class && Collection.class.isAssignableFrom((Class<?>) rawType)) {
+                return objectType(parameterizedType.getActualTypeArguments()[0]);
+            }
+            return objectType(rawType);
+        }
+        return null;
+    }
+
+    private static boolean isPlatformClass(Class<?> klass) {
+        String name = klass.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.");
+    }
+
+}
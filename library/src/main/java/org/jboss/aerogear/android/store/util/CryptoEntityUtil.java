@@ -22,6 +22,10 @@ import com.google.gson.GsonBuilder;
 import org.jboss.aerogear.android.security.EncryptionService;
 import org.jboss.aerogear.android.security.InvalidKeyException;
 
+/**
+ * Converts items to and from their encrypted JSON form. The encryption is
+ * synchronized as the ciphers of the encryption service are not thread safe.
+ */
 public class CryptoEntityUtil<T> {
 
     private final EncryptionService encryptionService;
@@ -40,13 +44,13 @@ public class CryptoEntityUtil<T> {
         this.gson = builder.create();
     }
 
-    public byte[] encrypt(T item) {
+    public synchronized byte[] encrypt(T item) {
         String json = gson.toJson(item);
         byte[] message = json.getBytes();
         return encryptionService.encrypt(IV, message);
     }
 
-    public T decrypt(byte[] data) {
+    public synchronized T decrypt(byte[] data) {
         try {
             byte[] decryptedData = encryptionService.decrypt(IV, data);
             String json = new String(decryptedData);
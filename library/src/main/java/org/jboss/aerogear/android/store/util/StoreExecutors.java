@@ -0,0 +1,110 @@
+/**
+ * JBoss, Home of Professional Open Source
+ * Copyright Red Hat, Inc., and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.aerogear.android.store.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads the stores run their background work on, and the delivery of
+ * its results to the main thread.
+ */
+public final class StoreExecutors {
+
+    private static final int KEEP_ALIVE_SECONDS = 30;
+    private static final int READER_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService READERS = newExecutor(READER_THREADS, "StoreReader");
+    private static final ExecutorService OPENERS = newExecutor(READER_THREADS, "StoreOpener");
+    private static final Handler MAIN_THREAD = new Handler(Looper.getMainLooper());
+
+    private StoreExecutors() {
+    }
+
+    /**
+     * Returns the pool shared by all the stores for reads and other work that
+     * may run concurrently. Its threads stop when they are idle.
+     *
+     * @return the shared reader pool
+     */
+    public static ExecutorService readers() {
+        return READERS;
+    }
+
+    /**
+     * Returns the pool the stores are opened on, kept apart from the reader
+     * pool so that opening a database never waits for reads, nor the reads
+     * for a database being created or upgraded. Its threads stop when they
+     * are idle.
+     *
+     * @return the shared opener pool
+     */
+    public static ExecutorService openers() {
+        return OPENERS;
+    }
+
+    /**
+     * Creates an executor running its tasks one at a time in submission
+     * order. Its thread stops when it is idle, so it does not need to be shut
+     * down.
+     *
+     * @param name the name of the thread
+     * @return a new serial executor
+     */
+    public static ExecutorService newSerialExecutor(String name) {
+        return newExecutor(1, name);
+    }
+
+    /**
+     * Returns an executor running its tasks on the main thread.
+     *
+     * @return the main thread executor
+     */
+    public static Executor mainThread() {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                MAIN_THREAD.post(command);
+            }
+        };
+    }
+
+    private static ExecutorService newExecutor(int threads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}